@@ -0,0 +1,95 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-threaded counting of one file: the original
+ * {@code Files.readAllLines} + {@code split("\\s+")} code against the streaming
+ * engine and a one-worker segmented pass.
+ *
+ * The readAllLines baseline is expected to fail with OutOfMemoryError on the
+ * largest sizes (and on NO_NEWLINES from a few hundred MB); JMH reports that
+ * combination as failed and carries on with the rest.
+ *
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar CountingBenchmark -prof gc
+ * java -jar benchmarks/target/benchmarks.jar CountingBenchmark -p size=4GB -p mix=ASCII
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+@State(Scope.Benchmark)
+public class CountingBenchmark {
+
+    @Param({"1KB", "1MB", "64MB", "1GB"})
+    public String size;
+
+    @Param({"ASCII", "UTF8", "LONG_LINES", "NO_NEWLINES"})
+    public TestFiles.Mix mix;
+
+    private Path file;
+    private long bytes;
+    private Engine streaming;
+    private Engine mapped;
+    private ForkJoinPool singleWorker;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = TestFiles.get(mix, size);
+        bytes = Files.size(file);
+        streaming = Engine.streaming();
+        singleWorker = new ForkJoinPool(1);
+        mapped = Engine.mapped(singleWorker);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        singleWorker.shutdown();
+    }
+
+    @Benchmark
+    public long readAllLinesSplit(Throughput throughput) throws IOException {
+        List<String> lines = Files.readAllLines(file);
+        long words = lines.stream().flatMap(l -> Arrays.stream(l.split("\\s+"))).filter(w -> !w.isEmpty()).count();
+        long chars = lines.stream().mapToInt(String::length).sum();
+        throughput.add(bytes);
+        return words + chars + lines.size();
+    }
+
+    @Benchmark
+    public Object streaming(Throughput throughput) {
+        Object result = streaming.analyze(file);
+        throughput.add(bytes);
+        return result;
+    }
+
+    @Benchmark
+    public Object mappedSingleThread(Throughput throughput) {
+        Object result = mapped.analyze(file);
+        throughput.add(bytes);
+        return result;
+    }
+}
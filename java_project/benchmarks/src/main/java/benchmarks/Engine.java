@@ -0,0 +1,95 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Bridge to the application's analysis classes.
+ *
+ * The application lives in the default package, which cannot be imported from
+ * a named package, and JMH refuses benchmarks in the default package. The
+ * engine is therefore reached through method handles resolved once; the call
+ * overhead is a few nanoseconds per file, far below the counting work measured.
+ */
+final class Engine {
+
+    private static final MethodHandle NEW_ENGINE;
+    private static final MethodHandle ANALYZE;
+    private static final MethodHandle ACTIVE_KERNEL;
+    private static final MethodHandle KERNEL_NAME;
+    private static final Object SEQUENTIAL;
+    private static final Object PARALLEL;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> engine = Class.forName("FileAnalysisEngine");
+            Class<?> mode = Class.forName("FileAnalysisEngine$Mode");
+            Class<?> result = Class.forName("AnalysisResult");
+            NEW_ENGINE = lookup.findConstructor(engine,
+                    MethodType.methodType(void.class, int.class, long.class, int.class, ForkJoinPool.class));
+            ANALYZE = lookup.findVirtual(engine, "analyze", MethodType.methodType(result, Path.class, mode));
+            Class<?> kernel = Class.forName("CountingKernel");
+            ACTIVE_KERNEL = lookup.findStatic(kernel, "active", MethodType.methodType(kernel));
+            KERNEL_NAME = lookup.findVirtual(kernel, "name", MethodType.methodType(String.class));
+            SEQUENTIAL = enumConstant(mode, "SEQUENTIAL");
+            PARALLEL = enumConstant(mode, "PARALLEL");
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Object engine;
+    private final Object mode;
+
+    private Engine(Object engine, Object mode) {
+        this.engine = engine;
+        this.mode = mode;
+    }
+
+    /** Single pass through a reused direct buffer. */
+    static Engine streaming() {
+        return new Engine(newEngine(ForkJoinPool.commonPool()), SEQUENTIAL);
+    }
+
+    /** 16 MB segments counted on {@code pool}. */
+    static Engine mapped(ForkJoinPool pool) {
+        return new Engine(newEngine(pool), PARALLEL);
+    }
+
+    /** Returns the analysis result (an {@code AnalysisResult}). */
+    Object analyze(Path file) {
+        try {
+            return ANALYZE.invoke(engine, file, mode);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /** Name of the counting kernel this JVM selected (see {@code -Dlfa.kernel}). */
+    static String activeKernel() {
+        try {
+            return (String) KERNEL_NAME.invoke(ACTIVE_KERNEL.invoke());
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private static Object newEngine(ForkJoinPool pool) {
+        try {
+            return NEW_ENGINE.invoke(256 * 1024, 0L, 16 * 1024 * 1024, pool);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object enumConstant(Class<?> type, String name) {
+        return Enum.valueOf((Class) type, name);
+    }
+}
@@ -0,0 +1,68 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streaming pass with each counting kernel. The kernel is fixed per JVM, so it
+ * is selected through {@code lfa.kernel} before the engine first loads; every
+ * parameter combination runs in its own fork.
+ *
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar KernelBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules=jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class KernelBenchmark {
+
+    @Param({"scalar", "swar", "vector"})
+    public String kernel;
+
+    @Param({"64MB"})
+    public String size;
+
+    @Param({"ASCII", "UTF8", "NO_NEWLINES"})
+    public TestFiles.Mix mix;
+
+    private Path file;
+    private long bytes;
+    private Engine streaming;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        System.setProperty("lfa.kernel", kernel);
+        if (!kernel.equals(Engine.activeKernel())) {
+            throw new IllegalStateException("kernel '" + kernel + "' is not available, got " + Engine.activeKernel());
+        }
+        file = TestFiles.get(mix, size);
+        bytes = Files.size(file);
+        streaming = Engine.streaming();
+    }
+
+    @Benchmark
+    public Object streaming(Throughput throughput) {
+        Object result = streaming.analyze(file);
+        throughput.add(bytes);
+        return result;
+    }
+}
@@ -0,0 +1,227 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Load test for {@code AnalysisServer} over localhost; not a JMH benchmark.
+ *
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar benchmarks.LoadTest [--url URL] [--mode post|path]
+ *      [--size 64KB] [--concurrency 16] [--requests 2000] [--warmup 200] [--workers N] [--queue N]
+ *      [--no-cache]
+ * </pre>
+ * Without {@code --url} a server is started in this JVM on a free port, with
+ * the given workers and queue and, unless {@code --no-cache}, an
+ * {@code AnalysisCache} on an index in a temporary directory, as
+ * {@code AnalysisServer --cache} runs. {@code post} sends a generated file as
+ * the request body; {@code path} asks the server to read it, which the cache
+ * answers after the first request. Each client thread sends its next request as soon as the previous
+ * one is answered, or after the server's {@code Retry-After} if it was turned
+ * away, as a well-behaved client would. Prints throughput, the latency
+ * percentiles of successful requests and how many were turned away with 429.
+ */
+public final class LoadTest {
+
+    private LoadTest() {}
+
+    public static void main(String[] args) throws Throwable {
+        String url = null;
+        String mode = "post";
+        String size = "64KB";
+        int concurrency = 16;
+        int requests = 2000;
+        int warmup = 200;
+        int workers = Runtime.getRuntime().availableProcessors();
+        int queue = 64;
+        boolean cache = true;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--no-cache")) {
+                cache = false;
+                continue;
+            }
+            String value = i + 1 < args.length ? args[i + 1] : null;
+            switch (args[i]) {
+                case "--url": url = value; break;
+                case "--mode": mode = value; break;
+                case "--size": size = value; break;
+                case "--concurrency": concurrency = Integer.parseInt(value); break;
+                case "--requests": requests = Integer.parseInt(value); break;
+                case "--warmup": warmup = Integer.parseInt(value); break;
+                case "--workers": workers = Integer.parseInt(value); break;
+                case "--queue": queue = Integer.parseInt(value); break;
+                default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+            i++;
+        }
+
+        Path file = TestFiles.get(TestFiles.Mix.ASCII, size);
+        Server server = null;
+        if (url == null) {
+            server = new Server(file.getParent(), workers, queue, cache);
+            url = "http://127.0.0.1:" + server.port();
+        }
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        HttpRequest request = mode.equals("path")
+                ? HttpRequest.newBuilder(URI.create(url + "/analyze?path="
+                        + URLEncoder.encode(file.toString(), StandardCharsets.UTF_8))).GET().build()
+                : HttpRequest.newBuilder(URI.create(url + "/analyze"))
+                        .POST(HttpRequest.BodyPublishers.ofFile(file)).build();
+        try {
+            System.out.printf("%s %s (%s) to %s, %d clients%s%n", mode, file.getFileName(), size, url, concurrency,
+                    server == null ? "" : cache ? ", cached" : ", no cache");
+            run(client, request, concurrency, warmup);
+            Result r = run(client, request, concurrency, requests);
+            long bytes = Files.size(file);
+            double seconds = r.nanos / 1e9;
+            System.out.printf("requests %d  ok %d  rejected (429) %d  errors %d%n", requests, r.ok, r.rejected,
+                    r.errors);
+            System.out.printf(Locale.ROOT, "throughput %.1f req/s  %.1f MB/s%n", r.ok / seconds,
+                    r.ok * bytes / seconds / (1024 * 1024));
+            System.out.printf(Locale.ROOT, "latency ms  p50 %.2f  p90 %.2f  p99 %.2f  max %.2f%n",
+                    r.percentile(50), r.percentile(90), r.percentile(99), r.percentile(100));
+        } finally {
+            if (server != null) server.stop();
+        }
+    }
+
+    private static final class Result {
+        final long[] latencies;
+        final int ok;
+        final int rejected;
+        final int errors;
+        final long nanos;
+
+        Result(long[] latencies, int ok, int rejected, int errors, long nanos) {
+            this.latencies = latencies;
+            this.ok = ok;
+            this.rejected = rejected;
+            this.errors = errors;
+            this.nanos = nanos;
+        }
+
+        double percentile(double p) {
+            if (latencies.length == 0) return 0;
+            int i = (int) Math.ceil(p / 100 * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(latencies.length - 1, i))] / 1e6;
+        }
+    }
+
+    private static Result run(HttpClient client, HttpRequest request, int concurrency, int requests)
+            throws InterruptedException {
+        long[] latencies = new long[requests];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger ok = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        Thread[] threads = new Thread[concurrency];
+        long start = System.nanoTime();
+        for (int t = 0; t < concurrency; t++) {
+            threads[t] = new Thread(() -> {
+                while (next.getAndIncrement() < requests) {
+                    long begin = System.nanoTime();
+                    try {
+                        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                        if (response.statusCode() == 200) {
+                            latencies[ok.getAndIncrement()] = System.nanoTime() - begin;
+                        } else if (response.statusCode() == 429) {
+                            rejected.incrementAndGet();
+                            Thread.sleep(retryAfterMillis(response));
+                        } else {
+                            if (errors.getAndIncrement() == 0) {
+                                System.err.println("HTTP " + response.statusCode() + ": " + response.body());
+                            }
+                        }
+                    } catch (IOException e) {
+                        if (errors.getAndIncrement() == 0) {
+                            System.err.println("Request failed: " + e);
+                        }
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }, "load-" + t);
+            threads[t].start();
+        }
+        for (Thread t : threads) t.join();
+        long nanos = System.nanoTime() - start;
+        long[] done = Arrays.copyOf(latencies, ok.get());
+        Arrays.sort(done);
+        return new Result(done, ok.get(), rejected.get(), errors.get(), nanos);
+    }
+
+    private static long retryAfterMillis(HttpResponse<?> response) {
+        try {
+            return response.headers().firstValue("Retry-After").map(Long::parseLong).orElse(1L) * 1000;
+        } catch (NumberFormatException e) {
+            return 1000;
+        }
+    }
+
+    /** An {@code AnalysisServer} in this JVM, reached like {@link Engine} through method handles. */
+    private static final class Server {
+        private final Object server;
+        private final MethodHandle stop;
+        private final int port;
+        private final Path cacheDir; // null without a cache
+
+        Server(Path root, int workers, int queue, boolean cached) throws Throwable {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> type = Class.forName("AnalysisServer");
+            Class<?> engine = Class.forName("FileAnalysisEngine");
+            Class<?> cache = Class.forName("AnalysisCache");
+            MethodHandle create = lookup.findConstructor(type,
+                    MethodType.methodType(void.class, engine, cache, List.class, int.class, int.class));
+            MethodHandle start = lookup.findVirtual(type, "start",
+                    MethodType.methodType(void.class, InetSocketAddress.class));
+            MethodHandle port = lookup.findVirtual(type, "port", MethodType.methodType(int.class));
+            stop = lookup.findVirtual(type, "stop", MethodType.methodType(void.class, int.class));
+            Object newEngine = lookup.findConstructor(engine, MethodType.methodType(void.class)).invoke();
+            Object newCache = null;
+            cacheDir = cached ? Files.createTempDirectory("lfa-loadtest") : null;
+            if (cached) {
+                newCache = lookup.findConstructor(cache,
+                        MethodType.methodType(void.class, Path.class, int.class, long.class, boolean.class)).invoke(
+                        cacheDir.resolve("cache.bin"),
+                        (int) lookup.findStaticGetter(cache, "DEFAULT_MAX_ENTRIES", int.class).invoke(),
+                        (long) lookup.findStaticGetter(cache, "DEFAULT_MAX_AGE_MILLIS", long.class).invoke(),
+                        false);
+            }
+            server = create.invoke(newEngine, newCache, Collections.singletonList(root), workers, queue);
+            start.invoke(server, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            this.port = (int) port.invoke(server);
+        }
+
+        int port() {
+            return port;
+        }
+
+        /** Stops the server, which saves its cache, and deletes the cache's directory. */
+        void stop() throws Throwable {
+            stop.invoke(server, 0);
+            if (cacheDir == null) return;
+            try (Stream<Path> files = Files.walk(cacheDir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(f -> f.toFile().delete());
+            }
+        }
+    }
+}
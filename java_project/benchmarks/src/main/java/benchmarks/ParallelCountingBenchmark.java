@@ -0,0 +1,73 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scaling of the segmented fork-join path with the number of workers.
+ * Once the file is in the page cache this measures CPU scaling; drop caches
+ * between runs to measure disk-bound behaviour.
+ *
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar ParallelCountingBenchmark -p threads=1,8,32 -prof gc
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParallelCountingBenchmark {
+
+    @Param({"64MB", "1GB", "4GB"})
+    public String size;
+
+    @Param({"ASCII", "UTF8", "LONG_LINES", "NO_NEWLINES"})
+    public TestFiles.Mix mix;
+
+    @Param({"1", "2", "4", "8", "16", "32"})
+    public int threads;
+
+    private Path file;
+    private long bytes;
+    private ForkJoinPool pool;
+    private Engine mapped;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = TestFiles.get(mix, size);
+        bytes = Files.size(file);
+        pool = new ForkJoinPool(threads);
+        mapped = Engine.mapped(pool);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public Object mappedParallel(Throughput throughput) {
+        Object result = mapped.analyze(file);
+        throughput.add(bytes);
+        return result;
+    }
+}
@@ -0,0 +1,83 @@
+package benchmarks;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generates deterministic benchmark inputs in {@code java.io.tmpdir}. Files are
+ * reused across forks and runs as long as their size matches.
+ */
+public final class TestFiles {
+
+    public enum Mix {
+        /** Short ASCII words, ~80-character lines. */
+        ASCII,
+        /** Words built from 2-, 3- and 4-byte UTF-8 characters. */
+        UTF8,
+        /** ASCII words on ~64 KB lines. */
+        LONG_LINES,
+        /** ASCII words and no line terminator at all. */
+        NO_NEWLINES
+    }
+
+    private static final String[] ASCII_WORDS = {"the", "quick", "brown", "fox", "jumps", "over", "a", "lazy",
+            "dog", "ERROR", "2024-01-01T00:00:00Z", "request_id=42", "{\"k\":1}", "x"};
+    private static final String[] UTF8_WORDS = {"héllo", "wörld", "naïve", "日本語", "中文字符", "😀", "🚀🚀",
+            "Ελληνικά", "кириллица", "عربى", "ascii"};
+
+    private TestFiles() {}
+
+    static long parseSize(String size) {
+        String s = size.trim().toUpperCase(Locale.ROOT);
+        long unit = 1;
+        if (s.endsWith("KB")) unit = 1024L;
+        else if (s.endsWith("MB")) unit = 1024L * 1024;
+        else if (s.endsWith("GB")) unit = 1024L * 1024 * 1024;
+        String digits = unit == 1 ? s : s.substring(0, s.length() - 2);
+        return Long.parseLong(digits.trim()) * unit;
+    }
+
+    static Path get(Mix mix, String size) throws IOException {
+        long bytes = parseSize(size);
+        Path file = Paths.get(System.getProperty("java.io.tmpdir"),
+                "lfa-bench-" + mix.name().toLowerCase(Locale.ROOT) + "-" + size + ".txt");
+        if (Files.isRegularFile(file) && Files.size(file) == bytes) return file;
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+            write(out, mix, bytes);
+        }
+        return file;
+    }
+
+    private static void write(OutputStream out, Mix mix, long bytes) throws IOException {
+        Random random = new Random(mix.ordinal() * 31L + bytes);
+        String[] words = mix == Mix.UTF8 ? UTF8_WORDS : ASCII_WORDS;
+        int lineLength = mix == Mix.LONG_LINES ? 64 * 1024 : 80;
+        long written = 0;
+        int column = 0;
+        byte[] space = {' '};
+        byte[] newline = {'\n'};
+        while (written < bytes) {
+            byte[] word = words[random.nextInt(words.length)].getBytes(StandardCharsets.UTF_8);
+            byte[] sep = mix != Mix.NO_NEWLINES && column + word.length > lineLength ? newline : space;
+            column = sep == newline ? 0 : column + word.length + 1;
+            // never cut a multi-byte character: pad the tail with spaces instead
+            if (written + word.length + 1 > bytes) {
+                while (written < bytes) {
+                    out.write(' ');
+                    written++;
+                }
+                break;
+            }
+            out.write(word);
+            out.write(sep);
+            written += word.length + 1;
+        }
+    }
+}
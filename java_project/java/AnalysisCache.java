@@ -0,0 +1,429 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+
+/**
+ * Persistent cache of {@link AnalysisResult}s.
+ *
+ * Entries are keyed on the canonical path and are valid while the file's size
+ * and last-modified time are unchanged, so a hit costs one {@code stat} and
+ * never opens the file. With {@code verifyContent} a CRC32C of the first and
+ * last 64 KB is also compared, which catches rewrites that keep size and
+ * mtime at the price of two small reads.
+ *
+ * The cache is an access-ordered LRU map bounded by entry count; entries older
+ * than {@code maxAge} are dropped on lookup and on load. It is saved as a
+ * compact binary index (by default {@code ~/.luxury-file-analyzer/cache.bin})
+ * via {@link #save()}, written to a temporary file and moved into place.
+ *
+ * A file's {@link LineIndex} is kept next to its entry, one file per key in a
+ * {@code lines} directory beside the index, checked against size and mtime
+ * like the entry. Saving removes the line indexes of the entries this instance
+ * dropped; indexes of keys it never knew about may belong to another process.
+ */
+public class AnalysisCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+    public static final long DEFAULT_MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(30);
+
+    private static final int MAGIC = 0x4C464143; // "LFAC"
+    private static final int VERSION = 3;
+    private static final int HASH_BLOCK = 64 * 1024;
+    private static final int LINES_MAGIC = 0x4C46414C; // "LFAL"
+    private static final int LINES_VERSION = 1;
+    private static final String LINES_SUFFIX = ".lidx";
+
+    private final Path indexFile;
+    private final int maxEntries;
+    private final long maxAgeMillis;
+    private final boolean verifyContent;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final LinkedHashMap<String, Entry> entries;
+    /** Keys dropped since the last save whose line indexes are to be deleted. */
+    private final Set<String> removedKeys = new HashSet<>();
+    private boolean dirty;
+
+    public AnalysisCache() {
+        this(defaultIndexFile(), DEFAULT_MAX_ENTRIES, DEFAULT_MAX_AGE_MILLIS, false);
+    }
+
+    public AnalysisCache(Path indexFile, int maxEntries, long maxAgeMillis, boolean verifyContent) {
+        if (maxEntries <= 0) throw new IllegalArgumentException("maxEntries must be positive");
+        this.indexFile = indexFile;
+        this.maxEntries = maxEntries;
+        this.maxAgeMillis = maxAgeMillis;
+        this.verifyContent = verifyContent;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() <= AnalysisCache.this.maxEntries) return false;
+                evictions.incrementAndGet();
+                removedKeys.add(eldest.getKey());
+                return true;
+            }
+        };
+        load();
+    }
+
+    public static Path defaultIndexFile() {
+        return Paths.get(System.getProperty("user.home"), ".luxury-file-analyzer", "cache.bin");
+    }
+
+    // ------------------- Lookup / Store -------------------
+    /** Returns the cached result for {@code file}, or null if absent or stale. */
+    public AnalysisResult get(Path file) {
+        try {
+            String key = key(file);
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            Entry entry;
+            synchronized (this) {
+                entry = entries.get(key);
+                if (entry != null && !entry.matches(attrs, maxAgeMillis)) {
+                    entries.remove(key);
+                    removedKeys.add(key);
+                    evictions.incrementAndGet();
+                    dirty = true;
+                    entry = null;
+                }
+            }
+            if (entry != null && verifyContent && entry.hash != contentHash(file, attrs.size())) {
+                synchronized (this) {
+                    entries.remove(key);
+                    removedKeys.add(key);
+                    dirty = true;
+                }
+                entry = null;
+            }
+            if (entry == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            return entry.result;
+        } catch (IOException e) {
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Stores {@code result} for {@code file}. {@code attrs} should be read
+     * before the analysis started, so a file modified during the pass is not
+     * cached under its new timestamp.
+     */
+    public void put(Path file, BasicFileAttributes attrs, AnalysisResult result) {
+        if (result.bytes() != attrs.size()) return; // changed while it was read
+        store(file, attrs, result);
+    }
+
+    /** Stores the total of {@code archive}; its entries are not kept. */
+    public void put(Path file, BasicFileAttributes attrs, ArchiveResult archive) {
+        if (archive.compressedBytes() != attrs.size()) return;
+        store(file, attrs, archive.total());
+    }
+
+    private void store(Path file, BasicFileAttributes attrs, AnalysisResult result) {
+        try {
+            String key = key(file);
+            long hash = verifyContent ? contentHash(file, attrs.size()) : 0;
+            Entry entry = new Entry(attrs.size(), attrs.lastModifiedTime().toMillis(), hash,
+                    System.currentTimeMillis(), result);
+            synchronized (this) {
+                entries.put(key, entry);
+                removedKeys.remove(key);
+                dirty = true;
+            }
+        } catch (IOException ignored) {
+            // an uncacheable file is simply analysed again next time
+        }
+    }
+
+    /** Returns the cached result for {@code file}, or analyses it and caches the outcome. */
+    public AnalysisResult analyze(Path file, FileAnalysisEngine engine, FileAnalysisEngine.Mode mode,
+                                  AnalysisMonitor monitor) throws IOException {
+        AnalysisResult cached = get(file);
+        if (cached != null) return cached;
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        AnalysisResult result = engine.analyze(file, mode, monitor);
+        put(file, attrs, result);
+        return result;
+    }
+
+    /**
+     * Like {@link #analyze(Path, FileAnalysisEngine, FileAnalysisEngine.Mode, AnalysisMonitor)}, but
+     * also fills {@code statistics}. Statistics are not cached, so when any are
+     * asked for the file is always read; the entry is still refreshed.
+     */
+    public AnalysisResult analyze(Path file, FileAnalysisEngine engine, FileAnalysisEngine.Mode mode,
+                                  AnalysisMonitor monitor, List<StatisticsCollector> statistics) throws IOException {
+        if (statistics.isEmpty()) return analyze(file, engine, mode, monitor);
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        AnalysisResult result = engine.analyze(file, mode, monitor, statistics);
+        put(file, attrs, result);
+        return result;
+    }
+
+    // ------------------- Line Indexes -------------------
+    /** Returns the line index saved for {@code file}, or null if there is none or the file changed since. */
+    public LineIndex lineIndex(Path file) {
+        try {
+            String key = key(file);
+            Path indexPath = lineIndexFile(key);
+            if (!Files.isRegularFile(indexPath)) return null;
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath)))) {
+                if (in.readInt() != LINES_MAGIC || in.readInt() != LINES_VERSION) return null;
+                if (!in.readUTF().equals(key)
+                        || in.readLong() != attrs.size()
+                        || in.readLong() != attrs.lastModifiedTime().toMillis()) return null;
+                long hash = in.readLong();
+                if (verifyContent && hash != contentHash(file, attrs.size())) return null;
+                return LineIndex.read(in);
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Saves {@code index}, filled by a pass over {@code file}, next to the
+     * file's entry. {@code attrs} should be read before the pass, as for
+     * {@link #put}; an index of a file that changed since is not kept.
+     */
+    public void putLineIndex(Path file, BasicFileAttributes attrs, LineIndex index) {
+        if (!index.applicable()) return;
+        Path tmp = null;
+        try {
+            BasicFileAttributes now = Files.readAttributes(file, BasicFileAttributes.class);
+            if (now.size() != attrs.size() || !now.lastModifiedTime().equals(attrs.lastModifiedTime())) return;
+            String key = key(file);
+            long hash = verifyContent ? contentHash(file, attrs.size()) : 0;
+            Path indexPath = lineIndexFile(key);
+            Files.createDirectories(indexPath.getParent());
+            tmp = Files.createTempFile(indexPath.getParent(), indexPath.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(LINES_MAGIC);
+                out.writeInt(LINES_VERSION);
+                out.writeUTF(key);
+                out.writeLong(attrs.size());
+                out.writeLong(attrs.lastModifiedTime().toMillis());
+                out.writeLong(hash);
+                index.write(out);
+            }
+            Files.move(tmp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            synchronized (this) {
+                removedKeys.remove(key); // written after the entry was dropped: current again
+            }
+        } catch (IOException e) {
+            deleteQuietly(tmp); // the preview builds the index again
+        }
+    }
+
+    private Path lineIndexFile(String key) {
+        return indexFile.resolveSibling("lines").resolve(lineIndexName(key));
+    }
+
+    private static String lineIndexName(String key) {
+        return UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)) + LINES_SUFFIX;
+    }
+
+    /**
+     * Deletes the line indexes of {@code keys}, entries this instance dropped:
+     * evicted, stale, expired or cleared. Keys cached again since are skipped.
+     */
+    private void removeLineIndexes(List<String> keys) throws IOException {
+        for (String key : keys) {
+            synchronized (this) {
+                if (entries.containsKey(key)) continue;
+            }
+            Files.deleteIfExists(lineIndexFile(key));
+        }
+    }
+
+    public synchronized void clear() {
+        removedKeys.addAll(entries.keySet());
+        entries.clear();
+        dirty = true;
+    }
+
+    // ------------------- Statistics -------------------
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // ------------------- Persistence -------------------
+    public void save() throws IOException {
+        Map<String, Entry> snapshot;
+        List<String> removed;
+        synchronized (this) {
+            if (!dirty) return;
+            snapshot = new LinkedHashMap<>(entries);
+            removed = new ArrayList<>(removedKeys);
+            removedKeys.clear();
+            dirty = false;
+        }
+        Path tmp = null;
+        try {
+            Files.createDirectories(indexFile.getParent());
+            // a name of its own, so that another process saving the same cache cannot write into it
+            tmp = Files.createTempFile(indexFile.getParent(), indexFile.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(snapshot.size());
+                for (Map.Entry<String, Entry> e : snapshot.entrySet()) {
+                    Entry entry = e.getValue();
+                    out.writeUTF(e.getKey());
+                    out.writeLong(entry.size);
+                    out.writeLong(entry.mtime);
+                    out.writeLong(entry.hash);
+                    out.writeLong(entry.storedAt);
+                    out.writeLong(entry.result.words());
+                    out.writeLong(entry.result.chars());
+                    out.writeLong(entry.result.codePoints());
+                    out.writeLong(entry.result.lines());
+                    out.writeLong(entry.result.bytes()); // not the file size for an archive
+                    out.writeLong(entry.result.malformed());
+                    out.writeUTF(entry.result.encoding() != null ? entry.result.encoding() : "");
+                }
+            }
+            Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException | Error e) {
+            synchronized (this) {
+                dirty = true; // not written; the next save tries again
+                for (String key : removed) {
+                    if (!entries.containsKey(key)) removedKeys.add(key);
+                }
+            }
+            deleteQuietly(tmp);
+            throw e;
+        }
+        removeLineIndexes(removed);
+    }
+
+    private void load() {
+        if (!Files.isRegularFile(indexFile)) return;
+        long now = System.currentTimeMillis();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return;
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                long size = in.readLong();
+                long mtime = in.readLong();
+                long hash = in.readLong();
+                long storedAt = in.readLong();
+                long words = in.readLong();
+                long chars = in.readLong();
+                long codePoints = in.readLong();
+                long lines = in.readLong();
+                long bytes = in.readLong();
+                long malformed = in.readLong();
+                String encoding = in.readUTF();
+                AnalysisResult result = new AnalysisResult(words, chars, codePoints, lines, bytes, malformed,
+                        encoding.isEmpty() ? null : encoding);
+                if (now - storedAt > maxAgeMillis) {
+                    removedKeys.add(key);
+                    dirty = true; // written without it on the next save
+                    continue;
+                }
+                entries.put(key, new Entry(size, mtime, hash, storedAt, result));
+            }
+        } catch (EOFException e) {
+            // truncated index: keep what was read
+        } catch (IOException e) {
+            entries.clear();
+        }
+    }
+
+    // ------------------- Helpers -------------------
+    private static void deleteQuietly(Path file) {
+        if (file == null) return;
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+            // a stray temporary file only takes space
+        }
+    }
+
+    private static String key(Path file) throws IOException {
+        return file.toRealPath().toString();
+    }
+
+    static long contentHash(Path file, long size) throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buf = ByteBuffer.allocate(HASH_BLOCK);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ch.read(buf, 0);
+            buf.flip();
+            crc.update(buf);
+            if (size > HASH_BLOCK) {
+                buf.clear();
+                ch.read(buf, Math.max(HASH_BLOCK, size - HASH_BLOCK));
+                buf.flip();
+                crc.update(buf);
+            }
+        }
+        return crc.getValue() ^ (size << 32);
+    }
+
+    private static final class Entry {
+        final long size;
+        final long mtime;
+        final long hash;
+        final long storedAt;
+        final AnalysisResult result;
+
+        Entry(long size, long mtime, long hash, long storedAt, AnalysisResult result) {
+            this.size = size;
+            this.mtime = mtime;
+            this.hash = hash;
+            this.storedAt = storedAt;
+            this.result = result;
+        }
+
+        boolean matches(BasicFileAttributes attrs, long maxAgeMillis) {
+            return size == attrs.size()
+                    && mtime == attrs.lastModifiedTime().toMillis()
+                    && System.currentTimeMillis() - storedAt <= maxAgeMillis;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Counts of a file extrapolated from a sample by {@link FileEstimator}, each
+ * with the half-width of its {@link #CONFIDENCE} interval: the true count lies
+ * in {@code value ± margin} with that probability. {@code bytes} is exact.
+ *
+ * An estimate over a file small enough to read whole is {@link #exact()} and
+ * has zero margins.
+ */
+public final class AnalysisEstimate {
+
+    public static final double CONFIDENCE = 0.95;
+
+    private final AnalysisResult result;
+    private final long wordsMargin;
+    private final long charsMargin;
+    private final long codePointsMargin;
+    private final long linesMargin;
+    private final long sampledBytes;
+
+    AnalysisEstimate(AnalysisResult result, long wordsMargin, long charsMargin, long codePointsMargin,
+                     long linesMargin, long sampledBytes) {
+        this.result = result;
+        this.wordsMargin = wordsMargin;
+        this.charsMargin = charsMargin;
+        this.codePointsMargin = codePointsMargin;
+        this.linesMargin = linesMargin;
+        this.sampledBytes = sampledBytes;
+    }
+
+    static AnalysisEstimate exact(AnalysisResult result) {
+        return new AnalysisEstimate(result, 0, 0, 0, 0, result.bytes());
+    }
+
+    /** The point estimates; {@code malformed} is not estimated and always 0 unless exact. */
+    public AnalysisResult result() {
+        return result;
+    }
+
+    public boolean exact() {
+        return sampledBytes >= result.bytes();
+    }
+
+    public long wordsMargin() {
+        return wordsMargin;
+    }
+
+    public long charsMargin() {
+        return charsMargin;
+    }
+
+    public long codePointsMargin() {
+        return codePointsMargin;
+    }
+
+    public long linesMargin() {
+        return linesMargin;
+    }
+
+    /** Bytes actually read to make the estimate. */
+    public long sampledBytes() {
+        return sampledBytes;
+    }
+
+    /** The widest margin relative to its value, e.g. 0.004 for ±0.4%. */
+    public double relativeError() {
+        return Math.max(Math.max(relative(wordsMargin, result.words()), relative(charsMargin, result.chars())),
+                relative(linesMargin, result.lines()));
+    }
+
+    private static double relative(long margin, long value) {
+        return margin == 0 ? 0 : (double) margin / Math.max(1, value);
+    }
+
+    @Override
+    public String toString() {
+        return "words=" + result.words() + "±" + wordsMargin + ", chars=" + result.chars() + "±" + charsMargin
+                + ", codePoints=" + result.codePoints() + "±" + codePointsMargin + ", lines=" + result.lines()
+                + "±" + linesMargin + ", bytes=" + result.bytes() + ", sampled=" + sampledBytes
+                + ", encoding=" + result.encoding();
+    }
+}
@@ -0,0 +1,499 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records what each analysis cost: bytes read, wall time, throughput, memory
+ * allocated and the number of live threads, next to the state of the result
+ * cache and the problems the application ran into.
+ *
+ * An analysis is measured by a {@link Span} from {@link #start} to
+ * {@link Span#finish} or {@link Span#fail}. Every span is also a JFR event
+ * ({@code LuxuryFileAnalyzer.Analysis}), so a flight recording shows slow
+ * analyses on its timeline; no event is created until Flight Recorder has
+ * been started. Totals, the last {@link #RECENT} analyses and problems and the
+ * startup {@link #milestone milestones} are kept in memory and published as an
+ * MXBean and as JSON.
+ *
+ * Allocation is counted on the thread that runs the analysis. Segments of a
+ * parallel analysis run on the fork-join pool and are not included; they read
+ * into reused buffers and allocate little.
+ */
+public final class AnalysisMetrics implements AnalysisMetricsMXBean {
+
+    public static final String OBJECT_NAME = "LuxuryFileAnalyzer:type=AnalysisMetrics";
+    public static final int RECENT = 32;
+
+    private static final AnalysisMetrics GLOBAL = new AnalysisMetrics();
+    private static boolean registered;
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final com.sun.management.ThreadMXBean allocation = allocationBean(threads);
+
+    private final LongAdder analyses = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    private final LongAdder allocated = new LongAdder();
+    private final Deque<Record> recent = new ArrayDeque<>();
+    private final Deque<Problem> problems = new ArrayDeque<>();
+    private final Map<String, Long> milestones = new LinkedHashMap<>(); // guarded by itself
+    private volatile AnalysisCache cache;
+
+    public AnalysisMetrics() {}
+
+    /** The instance the engine reports to. */
+    public static AnalysisMetrics global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Registers {@link #global()} on the platform MBean server, once. Returns
+     * false if JMX refused it; analyses are measured either way.
+     */
+    public static synchronized boolean registerMBean() {
+        if (registered) return true;
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(GLOBAL, new ObjectName(OBJECT_NAME));
+            registered = true;
+        } catch (JMException | SecurityException e) {
+            GLOBAL.problem("registering " + OBJECT_NAME, e);
+        }
+        return registered;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationBean(ThreadMXBean threads) {
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) return null;
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threads;
+        try {
+            if (!bean.isThreadAllocatedMemorySupported()) return null;
+            if (!bean.isThreadAllocatedMemoryEnabled()) bean.setThreadAllocatedMemoryEnabled(true);
+            return bean;
+        } catch (UnsupportedOperationException | SecurityException e) {
+            return null;
+        }
+    }
+
+    private long allocatedByThisThread() {
+        return allocation != null ? allocation.getCurrentThreadAllocatedBytes() : 0;
+    }
+
+    /** Reports the cache's hit, miss and eviction counts along with the analyses. */
+    public void watch(AnalysisCache cache) {
+        this.cache = cache;
+    }
+
+    // ------------------- Analyses -------------------
+    /** Starts measuring an analysis; {@code kind} says what ran, e.g. "file" or "estimate". */
+    public Span start(String kind, Path path) {
+        return new Span(kind, path == null ? "-" : path.toString());
+    }
+
+    /** One analysis in progress. Finish it on the thread that started it. */
+    public final class Span {
+        private String kind;
+        private final String path;
+        private final AnalysisEvent event = jfr() ? new AnalysisEvent() : null;
+        private final long startAllocated = allocatedByThisThread();
+        private final long startNanos = System.nanoTime();
+
+        private Span(String kind, String path) {
+            this.kind = kind;
+            this.path = path;
+            if (event != null) event.begin();
+        }
+
+        /** Replaces the kind given to {@link #start} once it is known how the analysis runs. */
+        public void kind(String kind) {
+            this.kind = kind;
+        }
+
+        /** Records a completed analysis that read the whole file and returns its result. */
+        public AnalysisResult finish(AnalysisResult result) {
+            finish(result.bytes());
+            return result;
+        }
+
+        public void finish(long bytes) {
+            end(bytes, "ok", null);
+        }
+
+        /** Records an analysis that threw; a {@link CancellationException} counts as cancelled, not failed. */
+        public void fail(Throwable error) {
+            end(0, error instanceof CancellationException ? "cancelled" : "failed", error);
+        }
+
+        private void end(long bytes, String outcome, Throwable error) {
+            long elapsed = System.nanoTime() - startNanos;
+            long bytesAllocated = Math.max(0, allocatedByThisThread() - startAllocated);
+            int live = threads.getThreadCount();
+            Record r = new Record(Instant.now(), kind, path, bytes, elapsed, bytesAllocated, live, outcome,
+                    error == null ? null : describe(error));
+            analyses.increment();
+            if (outcome.equals("failed")) failures.increment();
+            if (outcome.equals("cancelled")) cancelled.increment();
+            bytesRead.add(bytes);
+            nanos.add(elapsed);
+            allocated.add(bytesAllocated);
+            remember(recent, r);
+
+            if (event == null) return;
+            event.end();
+            if (event.shouldCommit()) {
+                event.kind = kind;
+                event.path = path;
+                event.bytesRead = bytes;
+                event.allocated = bytesAllocated;
+                event.threads = live;
+                event.outcome = r.outcome;
+                event.error = r.error;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Records an error the application handled, such as a file skipped in a
+     * folder or a cache that could not be saved, which would otherwise only
+     * reach a dialog or stderr.
+     */
+    public void problem(String context, Throwable error) {
+        Problem p = new Problem(Instant.now(), context, describe(error));
+        remember(problems, p);
+        if (!jfr()) return;
+        ProblemEvent event = new ProblemEvent();
+        if (event.shouldCommit()) {
+            event.context = context;
+            event.error = p.error;
+            event.commit();
+        }
+    }
+
+    private static String describe(Throwable error) {
+        String message = error.getMessage();
+        return error.getClass().getSimpleName() + (message != null ? ": " + message : "");
+    }
+
+    private static <T> void remember(Deque<T> ring, T item) {
+        synchronized (ring) {
+            if (ring.size() == RECENT) ring.removeLast();
+            ring.addFirst(item);
+        }
+    }
+
+    private static <T> List<T> copy(Deque<T> ring) {
+        synchronized (ring) {
+            return new ArrayList<>(ring);
+        }
+    }
+
+    // ------------------- Startup -------------------
+    /**
+     * Records how long after the JVM started {@code milestone} was first
+     * reached, e.g. "first frame", and returns that time in milliseconds.
+     * Later calls for the same milestone keep the first time.
+     */
+    public long milestone(String milestone) {
+        long millis = ManagementFactory.getRuntimeMXBean().getUptime();
+        synchronized (milestones) {
+            Long first = milestones.putIfAbsent(milestone, millis);
+            return first != null ? first : millis;
+        }
+    }
+
+    /** The milestones reached so far, in the order they were reached. */
+    public Map<String, Long> milestones() {
+        synchronized (milestones) {
+            return new LinkedHashMap<>(milestones);
+        }
+    }
+
+    // ------------------- Records -------------------
+    static final class Record {
+        final Instant time;
+        final String kind;
+        final String path;
+        final long bytes;
+        final long nanos;
+        final long allocated;
+        final int threads;
+        final String outcome;
+        final String error;
+
+        Record(Instant time, String kind, String path, long bytes, long nanos, long allocated, int threads,
+               String outcome, String error) {
+            this.time = time;
+            this.kind = kind;
+            this.path = path;
+            this.bytes = bytes;
+            this.nanos = nanos;
+            this.allocated = allocated;
+            this.threads = threads;
+            this.outcome = outcome;
+            this.error = error;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("time", time.toString());
+            m.put("kind", kind);
+            m.put("path", path);
+            m.put("bytes", bytes);
+            m.put("millis", nanos / 1_000_000);
+            m.put("throughputMBps", round(mbPerSecond(bytes, nanos)));
+            m.put("allocatedBytes", allocated);
+            m.put("threads", threads);
+            m.put("outcome", outcome);
+            if (error != null) m.put("error", error);
+            return m;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s %s: %d bytes in %d ms (%.1f MB/s), %d bytes allocated, %d threads, %s",
+                    time, kind, path, bytes, nanos / 1_000_000, mbPerSecond(bytes, nanos), allocated, threads,
+                    error == null ? outcome : outcome + " (" + error + ")");
+        }
+    }
+
+    static final class Problem {
+        final Instant time;
+        final String context;
+        final String error;
+
+        Problem(Instant time, String context, String error) {
+            this.time = time;
+            this.context = context;
+            this.error = error;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("time", time.toString());
+            m.put("context", context);
+            m.put("error", error);
+            return m;
+        }
+
+        @Override
+        public String toString() {
+            return time + " " + context + ": " + error;
+        }
+    }
+
+    private static double mbPerSecond(long bytes, long nanos) {
+        return nanos > 0 ? bytes / (nanos / 1e9) / (1024 * 1024) : 0;
+    }
+
+    private static double round(double v) {
+        return Math.round(v * 10) / 10.0;
+    }
+
+    // ------------------- Snapshot -------------------
+    /** Totals, threads, cache state and the recent analyses and problems, as JSON-ready maps and lists. */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("analyses", getAnalyses());
+        m.put("failures", getFailures());
+        m.put("cancelled", getCancelled());
+        m.put("bytesRead", getBytesRead());
+        m.put("analysisMillis", getAnalysisMillis());
+        m.put("throughputMBps", round(getThroughputMBps()));
+        m.put("allocatedBytes", getAllocatedBytes());
+        m.put("allocationMeasured", allocation != null);
+        m.put("kernel", CountingKernel.active().name());
+        Map<String, Long> startup = milestones();
+        if (!startup.isEmpty()) m.put("startupMillis", startup);
+
+        Map<String, Object> t = new LinkedHashMap<>();
+        t.put("live", threads.getThreadCount());
+        t.put("peak", threads.getPeakThreadCount());
+        t.put("daemon", threads.getDaemonThreadCount());
+        m.put("threads", t);
+
+        AnalysisCache c = cache;
+        if (c != null) {
+            Map<String, Object> cs = new LinkedHashMap<>();
+            cs.put("hits", c.hits());
+            cs.put("misses", c.misses());
+            cs.put("evictions", c.evictions());
+            cs.put("entries", c.size());
+            m.put("cache", cs);
+        }
+
+        List<Object> rs = new ArrayList<>();
+        for (Record r : copy(recent)) rs.add(r.toMap());
+        m.put("recentAnalyses", rs);
+        List<Object> ps = new ArrayList<>();
+        for (Problem p : copy(problems)) ps.add(p.toMap());
+        m.put("recentProblems", ps);
+        return m;
+    }
+
+    @Override
+    public String dumpJson() {
+        return FileAnalyzerCli.Json.value(snapshot());
+    }
+
+    // ------------------- MXBean -------------------
+    @Override
+    public long getAnalyses() {
+        return analyses.sum();
+    }
+
+    @Override
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    @Override
+    public long getCancelled() {
+        return cancelled.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getAnalysisMillis() {
+        return nanos.sum() / 1_000_000;
+    }
+
+    @Override
+    public double getThroughputMBps() {
+        return mbPerSecond(bytesRead.sum(), nanos.sum());
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return allocated.sum();
+    }
+
+    @Override
+    public long getCacheHits() {
+        AnalysisCache c = cache;
+        return c != null ? c.hits() : 0;
+    }
+
+    @Override
+    public long getCacheMisses() {
+        AnalysisCache c = cache;
+        return c != null ? c.misses() : 0;
+    }
+
+    @Override
+    public long getCacheEvictions() {
+        AnalysisCache c = cache;
+        return c != null ? c.evictions() : 0;
+    }
+
+    @Override
+    public int getCacheEntries() {
+        AnalysisCache c = cache;
+        return c != null ? c.size() : 0;
+    }
+
+    @Override
+    public int getThreadCount() {
+        return threads.getThreadCount();
+    }
+
+    @Override
+    public String[] getRecentAnalyses() {
+        return copy(recent).stream().map(Record::toString).toArray(String[]::new);
+    }
+
+    @Override
+    public String[] getRecentProblems() {
+        return copy(problems).stream().map(Problem::toString).toArray(String[]::new);
+    }
+
+    @Override
+    public String[] getStartupMilestones() {
+        return milestones().entrySet().stream().map(e -> e.getKey() + ": " + e.getValue() + " ms")
+                .toArray(String[]::new);
+    }
+
+    /** Clears the totals and the recent analyses and problems; startup milestones stay. */
+    @Override
+    public void reset() {
+        analyses.reset();
+        failures.reset();
+        cancelled.reset();
+        bytesRead.reset();
+        nanos.reset();
+        allocated.reset();
+        synchronized (recent) {
+            recent.clear();
+        }
+        synchronized (problems) {
+            problems.clear();
+        }
+    }
+
+    // ------------------- JFR Events -------------------
+    /**
+     * Whether Flight Recorder is running in this JVM, by command-line option or
+     * jcmd. Until then no event is created: the first one would load JFR itself,
+     * which costs a cold start some 200 ms.
+     */
+    private static boolean jfr() {
+        return FlightRecorder.isInitialized();
+    }
+
+    @Name("LuxuryFileAnalyzer.Analysis")
+    @Label("File Analysis")
+    @Category("Luxury File Analyzer")
+    @Description("One analysis from opening the file to its result")
+    static final class AnalysisEvent extends Event {
+        @Label("Kind")
+        String kind;
+        @Label("Path")
+        String path;
+        @Label("Bytes Read")
+        @DataAmount
+        long bytesRead;
+        @Label("Allocated")
+        @DataAmount
+        long allocated;
+        @Label("Live Threads")
+        int threads;
+        @Label("Outcome")
+        String outcome;
+        @Label("Error")
+        String error;
+    }
+
+    @Name("LuxuryFileAnalyzer.Problem")
+    @Label("Analyzer Problem")
+    @Category("Luxury File Analyzer")
+    @Description("An error the application handled and reported")
+    static final class ProblemEvent extends Event {
+        @Label("Context")
+        String context;
+        @Label("Error")
+        String error;
+    }
+}
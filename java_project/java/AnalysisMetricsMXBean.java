@@ -0,0 +1,47 @@
+/**
+ * Management interface of {@link AnalysisMetrics}, registered on the platform
+ * MBean server as {@value AnalysisMetrics#OBJECT_NAME} so that jconsole,
+ * VisualVM or any JMX client can watch a running analyzer.
+ */
+public interface AnalysisMetricsMXBean {
+
+    long getAnalyses();
+
+    /** Analyses that ended with an error; cancelled ones are counted apart. */
+    long getFailures();
+
+    long getCancelled();
+
+    long getBytesRead();
+
+    long getAnalysisMillis();
+
+    /** Bytes read per second of analysis time, over all analyses so far. */
+    double getThroughputMBps();
+
+    long getAllocatedBytes();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    long getCacheEvictions();
+
+    int getCacheEntries();
+
+    int getThreadCount();
+
+    /** The most recent analyses, newest first, one line each. */
+    String[] getRecentAnalyses();
+
+    /** The most recent errors the application handled, newest first, one line each. */
+    String[] getRecentProblems();
+
+    /** Milestones such as the first frame and the first result, in milliseconds after the JVM started. */
+    String[] getStartupMilestones();
+
+    /** Everything above as one JSON object. */
+    String dumpJson();
+
+    void reset();
+}
@@ -0,0 +1,15 @@
+/**
+ * Receives progress from a running analysis and lets the caller stop it.
+ * In parallel mode the methods are called from several worker threads.
+ */
+public interface AnalysisMonitor {
+
+    AnalysisMonitor NONE = new AnalysisMonitor() {};
+
+    default void progress(long bytesProcessed, long totalBytes) {}
+
+    /** Polled between buffers/segments; returning true aborts with a CancellationException. */
+    default boolean isCancelled() {
+        return false;
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Immutable outcome of analysing one file: the numbers shown on the stat cards.
+ *
+ * {@code chars} are UTF-16 code units (what {@code String.length()} gives) and
+ * {@code codePoints} are Unicode characters; both leave out line terminators.
+ * {@code malformed} counts byte sequences that are not valid in the detected
+ * {@code encoding}, which is null for totals over several files.
+ */
+public final class AnalysisResult {
+
+    private final long words;
+    private final long chars;
+    private final long codePoints;
+    private final long lines;
+    private final long bytes;
+    private final long malformed;
+    private final String encoding;
+
+    public AnalysisResult(long words, long chars, long lines, long bytes) {
+        this(words, chars, chars, lines, bytes, 0, null);
+    }
+
+    public AnalysisResult(long words, long chars, long codePoints, long lines, long bytes,
+                          long malformed, String encoding) {
+        this.words = words;
+        this.chars = chars;
+        this.codePoints = codePoints;
+        this.lines = lines;
+        this.bytes = bytes;
+        this.malformed = malformed;
+        this.encoding = encoding;
+    }
+
+    public long words() {
+        return words;
+    }
+
+    public long chars() {
+        return chars;
+    }
+
+    public long codePoints() {
+        return codePoints;
+    }
+
+    public long lines() {
+        return lines;
+    }
+
+    public long bytes() {
+        return bytes;
+    }
+
+    public long malformed() {
+        return malformed;
+    }
+
+    public String encoding() {
+        return encoding;
+    }
+
+    public long sizeKB() {
+        return bytes / 1024;
+    }
+
+    /** Sums the counts; the encoding is kept only if both sides agree. */
+    public AnalysisResult plus(AnalysisResult o) {
+        return new AnalysisResult(words + o.words, chars + o.chars, codePoints + o.codePoints, lines + o.lines,
+                bytes + o.bytes, malformed + o.malformed,
+                encoding != null && encoding.equals(o.encoding) ? encoding : null);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof AnalysisResult)) return false;
+        AnalysisResult r = (AnalysisResult) o;
+        return words == r.words && chars == r.chars && codePoints == r.codePoints && lines == r.lines
+                && bytes == r.bytes && malformed == r.malformed
+                && (encoding == null ? r.encoding == null : encoding.equals(r.encoding));
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(words) * 31 * 31 * 31 + Long.hashCode(chars) * 31 * 31
+                + Long.hashCode(lines) * 31 + Long.hashCode(bytes);
+    }
+
+    @Override
+    public String toString() {
+        return "words=" + words + ", chars=" + chars + ", codePoints=" + codePoints + ", lines=" + lines
+                + ", bytes=" + bytes + ", malformed=" + malformed + ", encoding=" + encoding;
+    }
+}
@@ -0,0 +1,349 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Serves the analysis engine over HTTP on the JDK's built-in server, so that
+ * scripts and other programs can count files without the GUI.
+ *
+ * <pre>
+ * POST /analyze[?stats=true]      counts the request body (gzip if Content-Encoding says so)
+ * GET  /analyze?path=FILE[&amp;stats=true]  counts a file below one of the server's roots
+ * GET  /metrics                   {@link AnalysisMetrics} as JSON
+ * GET  /health                    queue and worker state
+ * </pre>
+ * Results are the JSON objects of {@code FileAnalyzerCli --format json}.
+ *
+ * Request bodies are streamed through the counter as they arrive and never
+ * held whole. Analyses run on a fixed pool of {@code workers} threads behind a
+ * queue of {@code queueCapacity}; when both are full a request is answered at
+ * once with 429 and {@code Retry-After} instead of waiting. The HTTP threads
+ * only parse requests and hand them over, so they are never blocked by an
+ * analysis. Files are answered from the shared {@link AnalysisCache}, if any.
+ *
+ * The JDK this targets has no virtual threads, so the workers are platform
+ * threads and their number is the concurrency limit.
+ */
+public class AnalysisServer {
+
+    public static final int DEFAULT_PORT = 8080;
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+    private static final int HTTP_THREADS = 2;
+
+    private final FileAnalysisEngine engine;
+    private final AnalysisCache cache;
+    private final ArchiveAnalyzer archives;
+    private final List<Path> roots = new ArrayList<>();
+    private final ThreadPoolExecutor workers;
+    private final AtomicLong rejected = new AtomicLong();
+    private final AnalysisMetrics metrics = AnalysisMetrics.global();
+    private ExecutorService http;
+    private HttpServer server;
+
+    /**
+     * @param cache answers and stores path requests; may be null
+     * @param roots path requests outside these directories are refused
+     */
+    public AnalysisServer(FileAnalysisEngine engine, AnalysisCache cache, List<Path> roots, int workers,
+                          int queueCapacity) throws IOException {
+        if (workers <= 0) throw new IllegalArgumentException("workers must be positive");
+        if (queueCapacity <= 0) throw new IllegalArgumentException("queueCapacity must be positive");
+        this.engine = engine;
+        this.cache = cache;
+        this.archives = new ArchiveAnalyzer(engine);
+        for (Path root : roots) this.roots.add(root.toRealPath());
+        this.workers = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), threads("lfa-analysis-"), new ThreadPoolExecutor.AbortPolicy());
+        if (cache != null) metrics.watch(cache);
+    }
+
+    private static ThreadFactory threads(String prefix) {
+        AtomicInteger n = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    public synchronized void start(InetSocketAddress address) throws IOException {
+        if (server != null) throw new IllegalStateException("already started");
+        // headers and body go out in separate writes; with Nagle on, each small answer waits for a delayed ACK
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        server = HttpServer.create(address, 0);
+        http = Executors.newFixedThreadPool(HTTP_THREADS, threads("lfa-http-"));
+        server.setExecutor(http);
+        server.createContext("/analyze", this::analyze);
+        server.createContext("/metrics", exchange -> send(exchange, 200, metrics.dumpJson()));
+        server.createContext("/health", exchange -> send(exchange, 200, FileAnalyzerCli.Json.value(health())));
+        server.start();
+    }
+
+    /** The bound port; useful after starting on port 0. */
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Turns new analyses away with 503, lets admitted ones finish for up to
+     * {@code graceSeconds}, then closes the server and saves the cache.
+     */
+    public synchronized void stop(int graceSeconds) {
+        if (server == null) return;
+        workers.shutdown();
+        try {
+            workers.awaitTermination(graceSeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers.shutdownNow();
+        server.stop(0);
+        http.shutdownNow();
+        server = null;
+        if (cache != null) {
+            try {
+                cache.save();
+            } catch (IOException e) {
+                metrics.problem("saving the analysis cache", e);
+            }
+        }
+    }
+
+    private Map<String, Object> health() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("status", "ok");
+        m.put("workers", workers.getMaximumPoolSize());
+        m.put("active", workers.getActiveCount());
+        m.put("queued", workers.getQueue().size());
+        m.put("queueCapacity", workers.getQueue().size() + workers.getQueue().remainingCapacity());
+        m.put("completed", workers.getCompletedTaskCount());
+        m.put("rejected", rejected.get());
+        return m;
+    }
+
+    // ------------------- /analyze -------------------
+    /** Runs on an HTTP thread: admits the request to the work queue or turns it away. */
+    private void analyze(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        if (!method.equals("GET") && !method.equals("POST")) {
+            exchange.getResponseHeaders().set("Allow", "GET, POST");
+            send(exchange, 405, error("use GET with ?path= or POST a body"));
+            return;
+        }
+        try {
+            workers.execute(() -> {
+                try {
+                    respond(exchange);
+                } catch (IOException | RuntimeException e) {
+                    metrics.problem("answering " + exchange.getRequestURI(), e);
+                    failed(exchange, e);
+                } finally {
+                    exchange.close();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            if (workers.isShutdown()) {
+                send(exchange, 503, error("shutting down"));
+                return;
+            }
+            rejected.incrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            // an unread body cannot be skipped, so the connection is not reused
+            exchange.getResponseHeaders().set("Connection", "close");
+            send(exchange, 429, error("busy: " + workers.getQueue().size() + " analyses queued"));
+        }
+    }
+
+    /** Answers 500 unless the response was already under way or the client is gone. */
+    private static void failed(HttpExchange exchange, Exception e) {
+        if (exchange.getResponseCode() != -1) return;
+        try {
+            send(exchange, 500, error(e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName()));
+        } catch (IOException ignored) {
+            // nobody left to tell
+        }
+    }
+
+    /** Runs on a worker thread. */
+    private void respond(HttpExchange exchange) throws IOException {
+        Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+        boolean stats = Boolean.parseBoolean(query.get("stats"));
+        List<StatisticsCollector> statistics = stats ? StatisticsCollector.standard() : Collections.emptyList();
+        String path = query.get("path");
+        String json;
+        if (path != null) {
+            Path file = allowed(path);
+            if (file == null) {
+                send(exchange, 403, error("not below a served root: " + path));
+                return;
+            }
+            if (!Files.isRegularFile(file)) {
+                send(exchange, 400, error("not a regular file: " + path));
+                return;
+            }
+            json = analyzeFile(file, statistics);
+        } else if (exchange.getRequestMethod().equals("POST")) {
+            json = analyzeBody(exchange, statistics);
+        } else {
+            send(exchange, 400, error("GET needs ?path=, or POST the content"));
+            return;
+        }
+        send(exchange, 200, json);
+    }
+
+    private String analyzeBody(HttpExchange exchange, List<StatisticsCollector> statistics) throws IOException {
+        InputStream body = exchange.getRequestBody();
+        if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+            body = new GZIPInputStream(body, 64 * 1024);
+        }
+        AnalysisMetrics.Span span = metrics.start("request", null);
+        AnalysisResult result;
+        try {
+            result = span.finish(engine.analyze(body, AnalysisMonitor.NONE, statistics));
+        } catch (IOException | RuntimeException | Error e) {
+            span.fail(e);
+            throw e;
+        }
+        return "{" + FileAnalyzerCli.Json.counts(result) + stats(statistics) + "}";
+    }
+
+    private String analyzeFile(Path file, List<StatisticsCollector> statistics) throws IOException {
+        String name = "{\"path\":" + FileAnalyzerCli.Json.string(file.toString()) + ",";
+        ArchiveAnalyzer.Format format = ArchiveAnalyzer.detect(file);
+        if (format != null) {
+            ArchiveResult archive = archives.analyze(file, format);
+            return name + FileAnalyzerCli.Json.counts(archive.total()) + ",\"archive\":{\"format\":"
+                    + FileAnalyzerCli.Json.string(format.label()) + ",\"compressedBytes\":"
+                    + archive.compressedBytes() + ",\"entries\":" + archive.entries().size() + "}}";
+        }
+        AnalysisResult result = cache != null
+                ? cache.analyze(file, engine, FileAnalysisEngine.Mode.AUTO, AnalysisMonitor.NONE, statistics)
+                : engine.analyze(file, FileAnalysisEngine.Mode.AUTO, AnalysisMonitor.NONE, statistics);
+        return name + FileAnalyzerCli.Json.counts(result) + stats(statistics) + "}";
+    }
+
+    private static String stats(List<StatisticsCollector> statistics) {
+        if (statistics.isEmpty()) return "";
+        Map<String, Object> m = new LinkedHashMap<>();
+        for (StatisticsCollector s : statistics) {
+            if (s.applicable()) m.put(s.name(), s.summary());
+        }
+        return ",\"stats\":" + FileAnalyzerCli.Json.value(m);
+    }
+
+    /** {@code path} as a real path below one of the roots, or null. */
+    private Path allowed(String path) {
+        try {
+            Path real = Paths.get(path).toRealPath();
+            for (Path root : roots) {
+                if (real.startsWith(root)) return real;
+            }
+        } catch (IOException | RuntimeException e) {
+            // a missing or malformed path is as good as a forbidden one
+        }
+        return null;
+    }
+
+    private static Map<String, String> query(String raw) {
+        Map<String, String> params = new HashMap<>();
+        if (raw == null) return params;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "true" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static String error(String message) {
+        return "{\"error\":" + FileAnalyzerCli.Json.string(message) + "}";
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = (json + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    // ------------------- Main -------------------
+    /**
+     * <pre>
+     * java AnalysisServer [--port N] [--bind ADDRESS] [--workers N] [--queue N] [--root DIR]... [--cache]
+     * </pre>
+     * Binds to the loopback address unless told otherwise and serves files below
+     * the working directory unless roots are given.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        String bind = null;
+        int workerCount = Runtime.getRuntime().availableProcessors();
+        int queue = DEFAULT_QUEUE_CAPACITY;
+        List<Path> roots = new ArrayList<>();
+        boolean useCache = false;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--port": port = Integer.parseInt(value(args, ++i)); break;
+                    case "--bind": bind = value(args, ++i); break;
+                    case "--workers": workerCount = Integer.parseInt(value(args, ++i)); break;
+                    case "--queue": queue = Integer.parseInt(value(args, ++i)); break;
+                    case "--root": roots.add(Paths.get(value(args, ++i))); break;
+                    case "--cache": useCache = true; break;
+                    default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: java AnalysisServer [--port N] [--bind ADDRESS] [--workers N] [--queue N]"
+                    + " [--root DIR]... [--cache]");
+            System.exit(2);
+        }
+        if (roots.isEmpty()) roots.add(Paths.get("."));
+
+        AnalysisMetrics.registerMBean();
+        AnalysisServer server = new AnalysisServer(new FileAnalysisEngine(), useCache ? new AnalysisCache() : null,
+                roots, workerCount, queue);
+        InetAddress address = bind != null ? InetAddress.getByName(bind) : InetAddress.getLoopbackAddress();
+        server.start(new InetSocketAddress(address, port));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(5)));
+        System.err.println("Serving " + roots + " on http://" + address.getHostAddress() + ":" + server.port()
+                + " with " + workerCount + " workers, queue " + queue);
+    }
+
+    private static String value(String[] args, int i) {
+        if (i >= args.length) throw new IllegalArgumentException(args[i - 1] + " needs a value");
+        return args[i];
+    }
+}
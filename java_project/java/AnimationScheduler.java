@@ -0,0 +1,177 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Drives every animation in the window from one {@link Timer}.
+ *
+ * Ambient animations (background particles, the rotating drop-zone border)
+ * run continuously but only while the attached window is visible, focused and
+ * not minimized, and never in reduced-motion mode. Transitions (counters,
+ * hover shadows) run for a fixed duration and are ticked every frame until they
+ * finish. When nothing is left to tick the timer stops, so an idle window
+ * costs no CPU. Each animation repaints only the region it changed.
+ *
+ * Swing cannot tell whether a window is covered by another one; losing focus
+ * is used as the signal instead. All methods must be called on the EDT.
+ */
+public final class AnimationScheduler {
+
+    public static final int FRAME_MILLIS = 16;
+    public static final int AMBIENT_MILLIS = 50;
+
+    /** Ambient animation step; {@code frames} is the elapsed time in 50 ms units. */
+    public interface Ambient {
+        void tick(float frames);
+    }
+
+    /** Fixed-duration animation driven by a completion fraction in [0, 1]. */
+    public abstract static class Transition {
+        private final long durationNanos;
+        private long startNanos = -1;
+
+        protected Transition(int durationMillis) {
+            this.durationNanos = durationMillis * 1_000_000L;
+        }
+
+        protected abstract void apply(float fraction);
+
+        /** Returns true while the transition still has frames left. */
+        boolean tick(long now) {
+            if (startNanos < 0) startNanos = now;
+            float fraction = durationNanos <= 0 ? 1f : Math.min(1f, (float) (now - startNanos) / durationNanos);
+            apply(fraction);
+            return fraction < 1f;
+        }
+    }
+
+    private final List<Ambient> ambient = new ArrayList<>();
+    private final List<Component> ambientOwners = new ArrayList<>();
+    private final List<Transition> transitions = new ArrayList<>();
+    private final Timer timer;
+    private boolean paused = true; // until the attached window is activated, so nothing ticks before it shows
+    private boolean reducedMotion = Boolean.getBoolean("lfa.reducedMotion");
+    private boolean lowPower = Boolean.getBoolean("lfa.lowPower");
+    private long lastAmbientNanos;
+
+    public AnimationScheduler() {
+        timer = new Timer(FRAME_MILLIS, e -> tick());
+        timer.setCoalesce(true);
+    }
+
+    // ------------------- Registration -------------------
+    /** {@code owner} is skipped while it is not showing. */
+    public void addAmbient(Component owner, Ambient animation) {
+        ambient.add(animation);
+        ambientOwners.add(owner);
+        reschedule();
+    }
+
+    /** Starts {@code transition}; in reduced-motion mode it jumps straight to its end state. */
+    public Transition start(Transition transition) {
+        if (reducedMotion) {
+            transition.apply(1f);
+            return transition;
+        }
+        transitions.add(transition);
+        reschedule();
+        return transition;
+    }
+
+    public void stop(Transition transition) {
+        if (transition != null && transitions.remove(transition)) reschedule();
+    }
+
+    // ------------------- Power / Motion Settings -------------------
+    public void attachTo(Window window) {
+        window.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowIconified(WindowEvent e) {
+                setPaused(true);
+            }
+
+            @Override
+            public void windowDeiconified(WindowEvent e) {
+                setPaused(!window.isFocused());
+            }
+
+            @Override
+            public void windowActivated(WindowEvent e) {
+                setPaused(false);
+            }
+
+            @Override
+            public void windowDeactivated(WindowEvent e) {
+                setPaused(true);
+            }
+        });
+    }
+
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+        reschedule();
+    }
+
+    public boolean isReducedMotion() {
+        return reducedMotion;
+    }
+
+    public void setReducedMotion(boolean reducedMotion) {
+        this.reducedMotion = reducedMotion;
+        reschedule();
+    }
+
+    /** Halves the ambient frame rate. */
+    public void setLowPower(boolean lowPower) {
+        this.lowPower = lowPower;
+        reschedule();
+    }
+
+    // ------------------- Frame Tick -------------------
+    private boolean ambientActive() {
+        return !paused && !reducedMotion && !ambient.isEmpty();
+    }
+
+    private void reschedule() {
+        boolean active = ambientActive() || !transitions.isEmpty();
+        if (!active) {
+            timer.stop();
+            return;
+        }
+        timer.setDelay(transitions.isEmpty() ? ambientPeriodMillis() : FRAME_MILLIS);
+        if (!timer.isRunning()) {
+            lastAmbientNanos = System.nanoTime();
+            timer.start();
+        }
+    }
+
+    private int ambientPeriodMillis() {
+        return lowPower ? AMBIENT_MILLIS * 2 : AMBIENT_MILLIS;
+    }
+
+    private void tick() {
+        long now = System.nanoTime();
+
+        // Transitions added during this tick are picked up on the next one
+        int count = transitions.size();
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            Transition t = transitions.get(i);
+            if (t.tick(now)) transitions.set(kept++, t);
+        }
+        transitions.subList(kept, count).clear();
+
+        long sinceAmbient = now - lastAmbientNanos;
+        if (ambientActive() && sinceAmbient >= ambientPeriodMillis() * 1_000_000L - FRAME_MILLIS * 500_000L) {
+            lastAmbientNanos = now;
+            float frames = Math.min(4f, sinceAmbient / (AMBIENT_MILLIS * 1e6f));
+            for (int i = 0; i < ambient.size(); i++) {
+                if (ambientOwners.get(i).isShowing()) ambient.get(i).tick(frames);
+            }
+        }
+        reschedule();
+    }
+}
@@ -0,0 +1,239 @@
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Counts the text inside compressed files without extracting them.
+ *
+ * A {@code .gz} file is streamed through a {@link GZIPInputStream}, all
+ * members of it. The entries of a {@code .zip} or {@code .jar} are read with
+ * {@link ZipFile}, each as its own stream with its own detected encoding, and
+ * counted several at a time on a {@link ForkJoinPool}; an entry that is itself
+ * gzipped is decompressed too, other nested archives are counted as they are.
+ * Decompressed data only passes through the engine's stream buffer, so memory
+ * does not grow with the size of the archive or of any entry.
+ *
+ * Archives are recognised by name and confirmed by their first bytes, so a
+ * misnamed file is analysed as an ordinary one. Progress is reported in
+ * compressed bytes against the archive size.
+ */
+public class ArchiveAnalyzer {
+
+    public enum Format {
+        GZIP("gzip"), ZIP("zip");
+
+        private final String label;
+
+        Format(String label) {
+            this.label = label;
+        }
+
+        public String label() {
+            return label;
+        }
+    }
+
+    private static final int GZIP_BUFFER = 64 * 1024;
+
+    private final FileAnalysisEngine engine;
+    private final ForkJoinPool pool;
+
+    public ArchiveAnalyzer(FileAnalysisEngine engine) {
+        this(engine, ForkJoinPool.commonPool());
+    }
+
+    /** Zip entries are counted on {@code pool}, or on the caller's pool when called from a fork-join task. */
+    public ArchiveAnalyzer(FileAnalysisEngine engine, ForkJoinPool pool) {
+        this.engine = engine;
+        this.pool = pool;
+    }
+
+    /** The format {@code file} is named as, or null; does not touch the file. */
+    public static Format formatOf(Path file) {
+        Path name = file.getFileName();
+        if (name == null) return null;
+        String s = name.toString().toLowerCase(Locale.ROOT);
+        if (s.endsWith(".gz") || s.endsWith(".tgz")) return Format.GZIP;
+        if (s.endsWith(".zip") || s.endsWith(".jar")) return Format.ZIP;
+        return null;
+    }
+
+    /** The format of {@code file} if both its name and its first bytes say it is an archive, otherwise null. */
+    public static Format detect(Path file) throws IOException {
+        Format named = formatOf(file);
+        if (named == null) return null;
+        ByteBuffer magic = ByteBuffer.allocate(4);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (magic.hasRemaining() && channel.read(magic) > 0) {}
+        }
+        byte[] b = Arrays.copyOf(magic.array(), magic.position());
+        if (named == Format.GZIP) return b.length >= 2 && (b[0] & 0xFF) == 0x1F && (b[1] & 0xFF) == 0x8B ? named : null;
+        // local file header, or the end record of an empty archive
+        boolean zip = b.length == 4 && b[0] == 'P' && b[1] == 'K'
+                && ((b[2] == 3 && b[3] == 4) || (b[2] == 5 && b[3] == 6));
+        return zip ? named : null;
+    }
+
+    public ArchiveResult analyze(Path file, Format format) throws IOException {
+        return analyze(file, format, AnalysisMonitor.NONE);
+    }
+
+    public ArchiveResult analyze(Path file, Format format, AnalysisMonitor monitor) throws IOException {
+        AnalysisMetrics.Span span = AnalysisMetrics.global().start(format.label(), file);
+        try {
+            ArchiveResult result = format == Format.GZIP ? analyzeGzip(file, monitor) : analyzeZip(file, monitor);
+            span.finish(result.uncompressedBytes());
+            return result;
+        } catch (IOException | RuntimeException | Error e) {
+            span.fail(e);
+            throw e;
+        }
+    }
+
+    // ------------------- gzip -------------------
+    private ArchiveResult analyzeGzip(Path file, AnalysisMonitor monitor) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            AnalysisMonitor compressed = new AnalysisMonitor() {
+                @Override
+                public void progress(long bytesProcessed, long totalBytes) {
+                    try {
+                        monitor.progress(channel.position(), size);
+                    } catch (IOException ignored) {
+                        // progress is best effort; the read itself will report a broken channel
+                    }
+                }
+
+                @Override
+                public boolean isCancelled() {
+                    return monitor.isCancelled();
+                }
+            };
+            InputStream in = new GZIPInputStream(Channels.newInputStream(channel), GZIP_BUFFER);
+            AnalysisResult result = engine.analyze(in, compressed, Collections.emptyList());
+            ArchiveResult.Entry entry = new ArchiveResult.Entry(gunzippedName(file), size, result);
+            return new ArchiveResult(Format.GZIP, size, result, Collections.singletonList(entry));
+        }
+    }
+
+    private static String gunzippedName(Path file) {
+        String name = file.getFileName().toString();
+        String lower = name.toLowerCase(Locale.ROOT);
+        if (lower.endsWith(".tgz")) return name.substring(0, name.length() - 4) + ".tar";
+        return name.substring(0, name.length() - 3);
+    }
+
+    // ------------------- zip / jar -------------------
+    private ArchiveResult analyzeZip(Path file, AnalysisMonitor monitor) throws IOException {
+        try (ZipFile zip = new ZipFile(file.toFile())) {
+            long size = Files.size(file);
+            List<ZipEntry> entries = new ArrayList<>(zip.size());
+            for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements(); ) {
+                ZipEntry entry = e.nextElement();
+                if (!entry.isDirectory()) entries.add(entry);
+            }
+            AnalysisResult[] results = new AnalysisResult[entries.size()];
+            EntryTask task = new EntryTask(zip, entries, results, 0, entries.size(), monitor, new AtomicLong(), size);
+            try {
+                if (ForkJoinTask.inForkJoinPool()) {
+                    task.invoke();
+                } else {
+                    pool.invoke(task);
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            List<ArchiveResult.Entry> rows = new ArrayList<>(entries.size());
+            AnalysisResult total = null;
+            for (int i = 0; i < results.length; i++) {
+                rows.add(new ArchiveResult.Entry(entries.get(i).getName(), entries.get(i).getCompressedSize(),
+                        results[i]));
+                total = total == null ? results[i] : total.plus(results[i]);
+            }
+            if (total == null) total = new AnalysisResult(0, 0, 0, 0);
+            return new ArchiveResult(Format.ZIP, size, total, rows);
+        }
+    }
+
+    /** Counts entries {@code [from, to)}, splitting the range until one entry is left. */
+    private final class EntryTask extends RecursiveAction {
+        private final ZipFile zip;
+        private final List<ZipEntry> entries;
+        private final AnalysisResult[] results;
+        private final int from;
+        private final int to;
+        private final AnalysisMonitor monitor;
+        private final AnalysisMonitor cancellation; // for the entry's stream, whose progress has no total
+        private final AtomicLong processed;
+        private final long total;
+
+        EntryTask(ZipFile zip, List<ZipEntry> entries, AnalysisResult[] results, int from, int to,
+                  AnalysisMonitor monitor, AtomicLong processed, long total) {
+            this.zip = zip;
+            this.entries = entries;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+            this.monitor = monitor;
+            this.cancellation = new AnalysisMonitor() {
+                @Override
+                public boolean isCancelled() {
+                    return monitor.isCancelled();
+                }
+            };
+            this.processed = processed;
+            this.total = total;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new EntryTask(zip, entries, results, from, mid, monitor, processed, total),
+                        new EntryTask(zip, entries, results, mid, to, monitor, processed, total));
+                return;
+            }
+            if (from == to) return;
+            if (monitor.isCancelled()) throw new CancellationException();
+            ZipEntry entry = entries.get(from);
+            try (InputStream in = open(entry)) {
+                results[from] = engine.analyze(in, cancellation, Collections.emptyList());
+            } catch (IOException e) {
+                throw new UncheckedIOException(new IOException(entry.getName() + ": " + e.getMessage(), e));
+            }
+            monitor.progress(processed.addAndGet(Math.max(0, entry.getCompressedSize())), total);
+        }
+
+        /** A {@code .gz} entry is decompressed if its first bytes agree; a misnamed one is counted as it is. */
+        private InputStream open(ZipEntry entry) throws IOException {
+            InputStream in = zip.getInputStream(entry);
+            if (!entry.getName().toLowerCase(Locale.ROOT).endsWith(".gz")) return in;
+            BufferedInputStream peek = new BufferedInputStream(in, 2);
+            peek.mark(2);
+            boolean gzip = peek.read() == 0x1F && peek.read() == 0x8B;
+            peek.reset();
+            return gzip ? new GZIPInputStream(peek, GZIP_BUFFER) : peek;
+        }
+    }
+}
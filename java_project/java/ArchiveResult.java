@@ -0,0 +1,81 @@
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of analysing a compressed file with {@link ArchiveAnalyzer}: the
+ * counts of its uncompressed content, in total and per entry, next to the
+ * size of the archive on disk. {@code total().bytes()} is the uncompressed
+ * size. A gzip file has one entry, named after the file without its suffix.
+ */
+public final class ArchiveResult {
+
+    public static final class Entry {
+        private final String name;
+        private final long compressedBytes;
+        private final AnalysisResult result;
+
+        Entry(String name, long compressedBytes, AnalysisResult result) {
+            this.name = name;
+            this.compressedBytes = compressedBytes;
+            this.result = result;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        /** The entry's stored size, or -1 if the archive does not record it. */
+        public long compressedBytes() {
+            return compressedBytes;
+        }
+
+        public AnalysisResult result() {
+            return result;
+        }
+    }
+
+    private final ArchiveAnalyzer.Format format;
+    private final long compressedBytes;
+    private final AnalysisResult total;
+    private final List<Entry> entries;
+
+    ArchiveResult(ArchiveAnalyzer.Format format, long compressedBytes, AnalysisResult total, List<Entry> entries) {
+        this.format = format;
+        this.compressedBytes = compressedBytes;
+        this.total = total;
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    public ArchiveAnalyzer.Format format() {
+        return format;
+    }
+
+    /** Size of the archive file. */
+    public long compressedBytes() {
+        return compressedBytes;
+    }
+
+    public long uncompressedBytes() {
+        return total.bytes();
+    }
+
+    public AnalysisResult total() {
+        return total;
+    }
+
+    /** Entries in archive order; directories are left out. */
+    public List<Entry> entries() {
+        return entries;
+    }
+
+    /** Uncompressed over compressed size, e.g. 4.0 for a file that shrank to a quarter. */
+    public double ratio() {
+        return compressedBytes == 0 ? 1 : (double) total.bytes() / compressedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return format.label() + ", " + entries.size() + " entries, " + compressedBytes
+                + " bytes compressed, " + total.bytes() + " uncompressed";
+    }
+}
@@ -0,0 +1,116 @@
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Byte distribution of the input: Shannon entropy in bits per byte and a guess
+ * whether the file is binary rather than text.
+ *
+ * The guess follows what tools like git and grep do: any NUL byte, or more
+ * than 1% of control bytes other than tab, line breaks, form feed and escape,
+ * means binary. NUL and control bytes are normal in UTF-16 and UTF-32, so for
+ * those only the entropy rule applies: above 7.5 bits per byte the content is
+ * almost certainly compressed or encrypted.
+ *
+ * Counting uses four interleaved tables so that runs of the same byte do not
+ * serialise on one counter.
+ */
+public final class ByteStatistics extends StatisticsCollector {
+
+    private static final double BINARY_ENTROPY = 7.5;
+
+    private final long[] counts = new long[256];
+    private final int[] t0 = new int[256];
+    private final int[] t1 = new int[256];
+    private final int[] t2 = new int[256];
+    private final int[] t3 = new int[256];
+
+    @Override
+    public String name() {
+        return "bytes";
+    }
+
+    @Override
+    boolean textLevel() {
+        return false;
+    }
+
+    @Override
+    void update(byte[] data, int off, int len) {
+        int end = off + len;
+        int i = off;
+        for (; i + 4 <= end; i += 4) {
+            t0[data[i] & 0xFF]++;
+            t1[data[i + 1] & 0xFF]++;
+            t2[data[i + 2] & 0xFF]++;
+            t3[data[i + 3] & 0xFF]++;
+        }
+        for (; i < end; i++) t0[data[i] & 0xFF]++;
+        for (int b = 0; b < 256; b++) {
+            counts[b] += (long) t0[b] + t1[b] + t2[b] + t3[b];
+            t0[b] = t1[b] = t2[b] = t3[b] = 0;
+        }
+    }
+
+    @Override
+    public StatisticsCollector newSegment() {
+        return new ByteStatistics();
+    }
+
+    @Override
+    public void merge(StatisticsCollector next) {
+        long[] other = ((ByteStatistics) next).counts;
+        for (int b = 0; b < 256; b++) counts[b] += other[b];
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(counts, 0);
+    }
+
+    public long total() {
+        long total = 0;
+        for (long c : counts) total += c;
+        return total;
+    }
+
+    public long count(int b) {
+        return counts[b & 0xFF];
+    }
+
+    /** Shannon entropy in bits per byte, 0 (one repeated byte) to 8 (uniform). */
+    public double entropy() {
+        long total = total();
+        if (total == 0) return 0;
+        double h = 0;
+        for (long c : counts) {
+            if (c == 0) continue;
+            double p = (double) c / total;
+            h -= p * Math.log(p);
+        }
+        return h / Math.log(2);
+    }
+
+    public boolean binary() {
+        long total = total();
+        if (total == 0) return false;
+        if (entropy() > BINARY_ENTROPY) return true;
+        if (encoding.kind() == TextEncoding.Kind.DECODED) return false;
+        if (counts[0] > 0) return true;
+        long control = 0;
+        for (int b = 1; b < 0x20; b++) {
+            if (b == '\t' || b == '\n' || b == 0x0B || b == '\f' || b == '\r' || b == 0x1B) continue;
+            control += counts[b];
+        }
+        return control * 100 > total;
+    }
+
+    @Override
+    public Map<String, Object> summary() {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("entropy", Math.round(entropy() * 1000) / 1000.0);
+        summary.put("binary", binary());
+        summary.put("nulBytes", counts[0]);
+        return summary;
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * Count-Min sketch: a fixed {@code depth x width} grid of counters that
+ * over-estimates the count of any key by at most {@code 2N/width} with
+ * probability {@code 1 - 2^-depth}, where N is the total added. Two sketches of
+ * the same size merge by adding their cells.
+ *
+ * Adds are conservative: only the cells that would end up below the key's new
+ * estimate are raised, to it. Estimates stay upper bounds, also after a merge,
+ * and a key that collides with a frequent one no longer inherits its count in
+ * every row, which keeps rare keys far below the bound in practice.
+ *
+ * Rows are indexed by double hashing of one 64-bit key hash.
+ */
+final class CountMinSketch {
+
+    private final int depth;
+    private final int mask;
+    private final long[] cells;
+
+    CountMinSketch(int depth, int width) {
+        if (Integer.bitCount(width) != 1) throw new IllegalArgumentException("width must be a power of two: " + width);
+        this.depth = depth;
+        this.mask = width - 1;
+        this.cells = new long[depth * width];
+    }
+
+    private int cell(int row, long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        return row * (mask + 1) + ((h1 + row * h2) & mask);
+    }
+
+    int width() {
+        return mask + 1;
+    }
+
+    /** Adds {@code count} to the key and returns its new estimate. */
+    long add(long hash, long count) {
+        long estimate = estimate(hash) + count;
+        for (int row = 0; row < depth; row++) {
+            int c = cell(row, hash);
+            if (cells[c] < estimate) cells[c] = estimate;
+        }
+        return estimate;
+    }
+
+    long estimate(long hash) {
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            min = Math.min(min, cells[cell(row, hash)]);
+        }
+        return min;
+    }
+
+    void merge(CountMinSketch other) {
+        if (other.cells.length != cells.length || other.mask != mask) {
+            throw new IllegalArgumentException("sketches differ in size");
+        }
+        for (int i = 0; i < cells.length; i++) cells[i] += other.cells[i];
+    }
+}
@@ -0,0 +1,226 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Inner loop of {@link TextCounter}: classifies a range of bytes and advances
+ * the counter's word/char/terminator totals and its in-word / pending-CR state.
+ *
+ * Three implementations exist: the byte-at-a-time {@link Scalar} reference,
+ * {@link SwarKernel} (8 bytes per {@code long}) and {@code VectorKernel}
+ * (32-64 bytes per step on {@code jdk.incubator.vector}). {@link #active()}
+ * picks the fastest one available at runtime, after checking it against the
+ * scalar kernel on a differential corpus; {@code -Dlfa.kernel=scalar|swar|vector}
+ * forces a choice. The vector kernel needs {@code --add-modules jdk.incubator.vector}.
+ */
+public abstract class CountingKernel {
+
+    public abstract String name();
+
+    abstract void count(TextCounter c, byte[] data, int off, int len);
+
+    abstract void count(TextCounter c, ByteBuffer buf, int from, int to);
+
+    /**
+     * Block check for {@link Utf8Validator}: true if every byte in
+     * {@code [from, to)} is consistent with the three bytes before it (which
+     * must be in the array) under UTF-8's rules. False means "not shown",
+     * either because of an error or because the kernel has no such check.
+     */
+    boolean wellFormedUtf8(byte[] data, int from, int to) {
+        return false;
+    }
+
+    /** Feeds a buffer without an array to {@code validator}. */
+    void validate(Utf8Validator validator, ByteBuffer buf, int from, int to) {
+        validator.update(buf, from, to);
+    }
+
+    // ------------------- Selection -------------------
+    public static CountingKernel active() {
+        return Active.KERNEL;
+    }
+
+    /** Chosen on first use, after the corpus tables below are initialised. */
+    private static final class Active {
+        static final CountingKernel KERNEL = select();
+    }
+
+    /** Every kernel that loads on this JVM, scalar first. */
+    public static List<CountingKernel> available() {
+        List<CountingKernel> kernels = new ArrayList<>();
+        kernels.add(Scalar.INSTANCE);
+        kernels.add(new SwarKernel());
+        CountingKernel vector = loadVector();
+        if (vector != null) kernels.add(vector);
+        return kernels;
+    }
+
+    private static CountingKernel select() {
+        String forced = System.getProperty("lfa.kernel", "").toLowerCase(Locale.ROOT);
+        List<CountingKernel> kernels = available();
+        for (int i = kernels.size() - 1; i > 0; i--) {
+            CountingKernel k = kernels.get(i);
+            if (!forced.isEmpty() && !forced.equals(k.name())) continue;
+            String failure = verify(k, 96, 4096); // every tail length, then 32 random lengths
+            if (failure == null) return k;
+            AnalysisMetrics.global().problem("counting kernel '" + k.name() + "' failed self-check, not used",
+                    new IllegalStateException(failure));
+        }
+        return Scalar.INSTANCE;
+    }
+
+    private static CountingKernel loadVector() {
+        if (!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) return null;
+        try {
+            return (CountingKernel) Class.forName("VectorKernel").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            return null;
+        }
+    }
+
+    // ------------------- Differential Check -------------------
+    private static final byte[][] ALPHABET = {
+        {' '}, {'\t'}, {'\n'}, {'\r'}, {'\r', '\n'}, {0x0B}, {'\f'}, {'a'}, {'Z'}, {'0'}, {0x08}, {0x0E},
+        {0x1F}, {0x21}, {0x7F}, {(byte) 0xC3, (byte) 0xA9}, {(byte) 0xE2, (byte) 0x82, (byte) 0xAC},
+        {(byte) 0xF0, (byte) 0x9F, (byte) 0x98, (byte) 0x80}, {(byte) 0x80}, {(byte) 0xFF}, {(byte) 0xF8}
+    };
+
+    /**
+     * Counts a deterministic corpus of random byte mixes with {@code kernel} and
+     * with the scalar kernel, feeding both through the same random split points.
+     * The first 64 cases have lengths 0 to 63, so more than 64 are needed to reach
+     * {@code maxLength}. Returns null if every case agrees, else a description of
+     * the first mismatch.
+     */
+    public static String verify(CountingKernel kernel, int cases, int maxLength) {
+        Random random = new Random(0x5EED);
+        for (int n = 0; n < cases; n++) {
+            int length = n < 64 ? n : random.nextInt(maxLength);
+            byte[] data = new byte[length];
+            for (int i = 0; i < length; ) {
+                byte[] token = ALPHABET[random.nextInt(n % 3 == 0 ? 8 : ALPHABET.length)];
+                for (int k = 0; k < token.length && i < length; k++) data[i++] = token[k];
+            }
+            int split = length == 0 ? 0 : random.nextInt(length + 1);
+            int offset = random.nextInt(8);
+            byte[] padded = new byte[length + offset];
+            System.arraycopy(data, 0, padded, offset, length);
+
+            TextCounter expected = new TextCounter(Scalar.INSTANCE);
+            expected.update(data, 0, split);
+            expected.update(data, split, length - split);
+
+            TextCounter fromArray = new TextCounter(kernel);
+            fromArray.update(padded, offset, split);
+            fromArray.update(padded, offset + split, length - split);
+
+            TextCounter fromDirect = new TextCounter(kernel);
+            ByteBuffer direct = ByteBuffer.allocateDirect(length + offset);
+            direct.put(padded).flip().position(offset).limit(offset + split);
+            fromDirect.update(direct);
+            direct.limit(offset + length);
+            fromDirect.update(direct);
+
+            AnalysisResult want = expected.result();
+            if (!want.equals(fromArray.result()) || !want.equals(fromDirect.result())) {
+                return kernel.name() + " case " + n + " (length " + length + ", split " + split + "): expected "
+                        + want + ", array " + fromArray.result() + ", direct " + fromDirect.result();
+            }
+        }
+        return null;
+    }
+
+    // ------------------- Scalar Reference -------------------
+    static final class Scalar extends CountingKernel {
+        static final Scalar INSTANCE = new Scalar();
+
+        @Override
+        public String name() {
+            return "scalar";
+        }
+
+        @Override
+        void count(TextCounter c, byte[] data, int off, int len) {
+            long w = c.words, t = c.terminators, nl = c.newlines, cont = c.continuations, sup = c.supplementary;
+            boolean word = c.inWord, cr = c.prevCR;
+            int end = off + len;
+            for (int i = off; i < end; i++) {
+                int b = data[i] & 0xFF;
+                if (b == '\n') {
+                    if (!cr) t++;
+                    nl++;
+                    cr = false;
+                    word = false;
+                } else if (b == '\r') {
+                    t++;
+                    nl++;
+                    cr = true;
+                    word = false;
+                } else {
+                    cr = false;
+                    if (b >= 0xC0) {
+                        if (b >= 0xF0 && b < 0xF8) sup++;   // 4-byte lead: a surrogate pair in UTF-16
+                    } else if (b >= 0x80) {
+                        cont++;
+                    }
+                    if (TextCounter.WHITESPACE[b]) {
+                        word = false;
+                    } else if (!word) {
+                        w++;
+                        word = true;
+                    }
+                }
+            }
+            c.words = w;
+            c.terminators = t;
+            c.newlines = nl;
+            c.continuations = cont;
+            c.supplementary = sup;
+            c.inWord = word;
+            c.prevCR = cr;
+        }
+
+        @Override
+        void count(TextCounter c, ByteBuffer buf, int from, int to) {
+            long w = c.words, t = c.terminators, nl = c.newlines, cont = c.continuations, sup = c.supplementary;
+            boolean word = c.inWord, cr = c.prevCR;
+            for (int i = from; i < to; i++) {
+                int b = buf.get(i) & 0xFF;
+                if (b == '\n') {
+                    if (!cr) t++;
+                    nl++;
+                    cr = false;
+                    word = false;
+                } else if (b == '\r') {
+                    t++;
+                    nl++;
+                    cr = true;
+                    word = false;
+                } else {
+                    cr = false;
+                    if (b >= 0xC0) {
+                        if (b >= 0xF0 && b < 0xF8) sup++;   // 4-byte lead: a surrogate pair in UTF-16
+                    } else if (b >= 0x80) {
+                        cont++;
+                    }
+                    if (TextCounter.WHITESPACE[b]) {
+                        word = false;
+                    } else if (!word) {
+                        w++;
+                        word = true;
+                    }
+                }
+            }
+            c.words = w;
+            c.terminators = t;
+            c.newlines = nl;
+            c.continuations = cont;
+            c.supplementary = sup;
+            c.inWord = word;
+            c.prevCR = cr;
+        }
+    }
+}
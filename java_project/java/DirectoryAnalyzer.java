@@ -0,0 +1,294 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Analyses every regular file below a set of roots.
+ *
+ * Directories are walked with {@link Files#newDirectoryStream} on a private
+ * work-stealing {@link ForkJoinPool}: each directory is a task, subdirectories
+ * are forked and files are counted in small batches. The pool's parallelism is
+ * the I/O concurrency limit, so at most that many files are open at once
+ * whatever the size of the tree. Per-file results are handed to a
+ * {@link Listener} as they are produced and only the running totals are kept.
+ * Symbolic links to directories are not followed. When an {@link AnalysisCache}
+ * is given, unchanged files are answered from it without being opened, unless
+ * {@link StatisticsCollector statistics} are asked for.
+ *
+ * Gzip, zip and jar files are counted by their uncompressed content through an
+ * {@link ArchiveAnalyzer}, with zip entries forked on the same pool. Archives
+ * get no statistics. The cache keeps an archive's total only, so an unchanged
+ * archive is reported like a plain file, without its entries.
+ */
+public class DirectoryAnalyzer {
+
+    public static final int DEFAULT_IO_CONCURRENCY = 8;
+    private static final int FILE_BATCH = 32;
+
+    /** Called from walker threads, possibly concurrently. */
+    public interface Listener {
+        void fileAnalyzed(Path file, AnalysisResult result);
+
+        /** Called instead of {@link #fileAnalyzed(Path, AnalysisResult)} when statistics were collected. */
+        default void fileAnalyzed(Path file, AnalysisResult result, List<StatisticsCollector> statistics) {
+            fileAnalyzed(file, result);
+        }
+
+        /** Called instead of {@link #fileAnalyzed(Path, AnalysisResult)} for a compressed file. */
+        default void archiveAnalyzed(Path file, ArchiveResult archive) {
+            fileAnalyzed(file, archive.total());
+        }
+
+        default void fileFailed(Path file, IOException error) {}
+    }
+
+    private final FileAnalysisEngine engine;
+    private final AnalysisCache cache;
+    private final FileAnalysisEngine.Mode fileMode;
+    private final ForkJoinPool pool;
+    private final ArchiveAnalyzer archives;
+
+    public DirectoryAnalyzer(FileAnalysisEngine engine) {
+        this(engine, DEFAULT_IO_CONCURRENCY, null);
+    }
+
+    public DirectoryAnalyzer(FileAnalysisEngine engine, int ioConcurrency, AnalysisCache cache) {
+        this(engine, ioConcurrency, cache, FileAnalysisEngine.Mode.SEQUENTIAL);
+    }
+
+    /** {@code fileMode} is passed to the engine for every file; SEQUENTIAL keeps one thread per file. */
+    public DirectoryAnalyzer(FileAnalysisEngine engine, int ioConcurrency, AnalysisCache cache,
+                             FileAnalysisEngine.Mode fileMode) {
+        if (ioConcurrency <= 0) throw new IllegalArgumentException("ioConcurrency must be positive");
+        this.engine = engine;
+        this.cache = cache;
+        this.fileMode = fileMode;
+        this.pool = new ForkJoinPool(ioConcurrency);
+        this.archives = new ArchiveAnalyzer(engine, pool);
+    }
+
+    public Summary analyze(List<Path> roots, Listener listener, AnalysisMonitor monitor) throws IOException {
+        return analyze(roots, listener, monitor, null);
+    }
+
+    /** Also fills a fresh set of collectors from {@code statistics} for every file, if not null. */
+    public Summary analyze(List<Path> roots, Listener listener, AnalysisMonitor monitor,
+                           Supplier<List<StatisticsCollector>> statistics) throws IOException {
+        Totals totals = new Totals(listener, monitor, statistics);
+        List<Path> files = new ArrayList<>();
+        List<Path> dirs = new ArrayList<>();
+        for (Path root : roots) {
+            if (Files.isDirectory(root, LinkOption.NOFOLLOW_LINKS)) {
+                dirs.add(root);
+            } else if (Files.isRegularFile(root)) {
+                files.add(root);
+            } else {
+                throw new IOException("Not a file or directory: " + root);
+            }
+        }
+        pool.invoke(new RootTask(dirs, files, totals));
+        return totals.summary();
+    }
+
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    // ------------------- Results -------------------
+    public static final class Summary {
+        private final long files;
+        private final long failed;
+        private final AnalysisResult total;
+
+        Summary(long files, long failed, AnalysisResult total) {
+            this.files = files;
+            this.failed = failed;
+            this.total = total;
+        }
+
+        public long files() {
+            return files;
+        }
+
+        public long failed() {
+            return failed;
+        }
+
+        public AnalysisResult total() {
+            return total;
+        }
+    }
+
+    /** Shared running totals; also forwards cancellation and byte progress. */
+    private final class Totals implements AnalysisMonitor {
+        final LongAdder files = new LongAdder();
+        final LongAdder failed = new LongAdder();
+        final LongAdder words = new LongAdder();
+        final LongAdder chars = new LongAdder();
+        final LongAdder codePoints = new LongAdder();
+        final LongAdder malformed = new LongAdder();
+        final LongAdder lines = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+        final Listener listener;
+        final AnalysisMonitor monitor;
+        final Supplier<List<StatisticsCollector>> statistics;
+
+        Totals(Listener listener, AnalysisMonitor monitor, Supplier<List<StatisticsCollector>> statistics) {
+            this.listener = listener;
+            this.monitor = monitor;
+            this.statistics = statistics;
+        }
+
+        void analyzeFile(Path file) {
+            checkCancelled();
+            List<StatisticsCollector> stats = statistics != null ? statistics.get() : Collections.emptyList();
+            AnalysisResult result;
+            ArchiveResult archive = null;
+            ArchiveAnalyzer.Format format;
+            try {
+                format = ArchiveAnalyzer.detect(file);
+                if (format == null) {
+                    result = cache != null
+                            ? cache.analyze(file, engine, fileMode, this, stats)
+                            : engine.analyze(file, fileMode, this, stats);
+                } else if (cache == null || (result = cache.get(file)) == null) {
+                    BasicFileAttributes attrs = cache != null
+                            ? Files.readAttributes(file, BasicFileAttributes.class) : null;
+                    archive = archives.analyze(file, format, this);
+                    result = archive.total();
+                    if (cache != null) cache.put(file, attrs, archive);
+                }
+            } catch (IOException e) {
+                failed.increment();
+                listener.fileFailed(file, e);
+                return;
+            }
+            files.increment();
+            words.add(result.words());
+            chars.add(result.chars());
+            codePoints.add(result.codePoints());
+            malformed.add(result.malformed());
+            lines.add(result.lines());
+            bytes.add(result.bytes());
+            if (archive != null) {
+                listener.archiveAnalyzed(file, archive);
+            } else if (statistics != null && format == null) {
+                listener.fileAnalyzed(file, result, stats);
+            } else {
+                listener.fileAnalyzed(file, result);
+            }
+            monitor.progress(bytes.sum(), -1);
+        }
+
+        void checkCancelled() {
+            if (monitor.isCancelled()) throw new CancellationException();
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return monitor.isCancelled();
+        }
+
+        Summary summary() {
+            return new Summary(files.sum(), failed.sum(),
+                    new AnalysisResult(words.sum(), chars.sum(), codePoints.sum(), lines.sum(), bytes.sum(),
+                            malformed.sum(), null));
+        }
+    }
+
+    // ------------------- Walker Tasks -------------------
+    private final class RootTask extends RecursiveAction {
+        private final List<Path> dirs;
+        private final List<Path> files;
+        private final Totals totals;
+
+        RootTask(List<Path> dirs, List<Path> files, Totals totals) {
+            this.dirs = dirs;
+            this.files = files;
+            this.totals = totals;
+        }
+
+        @Override
+        protected void compute() {
+            List<RecursiveAction> tasks = new ArrayList<>();
+            for (Path dir : dirs) {
+                tasks.add(new DirectoryTask(dir, totals));
+            }
+            for (int i = 0; i < files.size(); i += FILE_BATCH) {
+                tasks.add(new FileBatchTask(files.subList(i, Math.min(files.size(), i + FILE_BATCH)), totals));
+            }
+            invokeAll(tasks);
+        }
+    }
+
+    private final class DirectoryTask extends RecursiveAction {
+        private final Path dir;
+        private final Totals totals;
+
+        DirectoryTask(Path dir, Totals totals) {
+            this.dir = dir;
+            this.totals = totals;
+        }
+
+        @Override
+        protected void compute() {
+            totals.checkCancelled();
+            List<RecursiveAction> forked = new ArrayList<>();
+            List<Path> batch = new ArrayList<>(FILE_BATCH);
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path entry : entries) {
+                    if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        DirectoryTask sub = new DirectoryTask(entry, totals);
+                        sub.fork();
+                        forked.add(sub);
+                    } else if (Files.isRegularFile(entry)) {
+                        batch.add(entry);
+                        if (batch.size() == FILE_BATCH) {
+                            FileBatchTask task = new FileBatchTask(batch, totals);
+                            task.fork();
+                            forked.add(task);
+                            batch = new ArrayList<>(FILE_BATCH);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                totals.failed.increment();
+                totals.listener.fileFailed(dir, e);
+            }
+            for (Path file : batch) {
+                totals.analyzeFile(file);
+            }
+            for (RecursiveAction task : forked) {
+                task.join();
+            }
+        }
+    }
+
+    private final class FileBatchTask extends RecursiveAction {
+        private final List<Path> files;
+        private final Totals totals;
+
+        FileBatchTask(List<Path> files, Totals totals) {
+            this.files = files;
+            this.totals = totals;
+        }
+
+        @Override
+        protected void compute() {
+            for (Path file : files) {
+                totals.analyzeFile(file);
+            }
+        }
+    }
+}
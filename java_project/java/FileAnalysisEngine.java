@@ -0,0 +1,263 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts words, characters and lines of a file with a {@link TextCounter}.
+ *
+ * The file's {@link TextEncoding} is detected from its first bytes. Input that
+ * has to be decoded (UTF-16, UTF-32, ...) is always read sequentially.
+ * Small files are read once through a fixed-size direct buffer. Files of at
+ * least {@code parallelThreshold} bytes in a byte-counted encoding are split
+ * into segments that are counted on a {@link ForkJoinPool} and merged back in
+ * file order, which gives the same result as the sequential path. Segments
+ * are read with positional reads rather than mapped: a mapping is only
+ * released by the garbage collector, which a counting pass hardly wakes, and
+ * a terabyte file would exceed the process's limit on live mappings. Each
+ * thread reuses one direct buffer of {@code bufferSize} bytes.
+ *
+ * {@link StatisticsCollector}s passed to an analysis are fed in the same pass;
+ * in parallel each segment fills its own copies, merged in file order into the
+ * collectors passed in.
+ *
+ * Progress and cancellation go through an {@link AnalysisMonitor}; a cancelled
+ * analysis ends with a {@link CancellationException}. Every analysis of a path
+ * is measured by {@link AnalysisMetrics#global()}.
+ */
+public class FileAnalysisEngine {
+
+    public enum Mode { AUTO, SEQUENTIAL, PARALLEL }
+
+    public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+    public static final long DEFAULT_PARALLEL_THRESHOLD = 64L * 1024 * 1024;
+    public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    private final int bufferSize;
+    private final long parallelThreshold;
+    private final int segmentSize;
+    private final ForkJoinPool pool;
+    private final ThreadLocal<ByteBuffer> buffers;
+    private final ThreadLocal<byte[]> streamBuffers;
+
+    public FileAnalysisEngine() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    public FileAnalysisEngine(int bufferSize) {
+        this(bufferSize, DEFAULT_PARALLEL_THRESHOLD, DEFAULT_SEGMENT_SIZE, ForkJoinPool.commonPool());
+    }
+
+    public FileAnalysisEngine(int bufferSize, long parallelThreshold, int segmentSize, ForkJoinPool pool) {
+        if (bufferSize <= 0) throw new IllegalArgumentException("bufferSize must be positive");
+        if (segmentSize <= 0) throw new IllegalArgumentException("segmentSize must be positive");
+        this.bufferSize = bufferSize;
+        this.buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(bufferSize));
+        this.streamBuffers = ThreadLocal.withInitial(() -> new byte[Math.max(bufferSize, TextEncoding.SAMPLE_SIZE)]);
+        this.parallelThreshold = parallelThreshold;
+        this.segmentSize = segmentSize;
+        this.pool = pool;
+    }
+
+    public AnalysisResult analyze(Path path) throws IOException {
+        return analyze(path, Mode.AUTO);
+    }
+
+    public AnalysisResult analyze(Path path, Mode mode) throws IOException {
+        return analyze(path, mode, AnalysisMonitor.NONE);
+    }
+
+    public AnalysisResult analyze(Path path, Mode mode, AnalysisMonitor monitor) throws IOException {
+        return analyze(path, mode, monitor, Collections.emptyList());
+    }
+
+    /** Also fills {@code statistics}, which must be empty. */
+    public AnalysisResult analyze(Path path, Mode mode, AnalysisMonitor monitor,
+                                  List<StatisticsCollector> statistics) throws IOException {
+        AnalysisMetrics.Span span = AnalysisMetrics.global().start("file", path);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            TextEncoding encoding = TextEncoding.detect(channel);
+            boolean parallel = mode == Mode.PARALLEL
+                    || (mode == Mode.AUTO && channel.size() >= parallelThreshold);
+            span.kind(parallel ? "parallel" : "sequential");
+            return span.finish(parallel ? analyzeParallel(channel, encoding, monitor, statistics)
+                    : analyze(channel, encoding, monitor, statistics));
+        } catch (IOException | RuntimeException | Error e) {
+            span.fail(e);
+            throw e;
+        }
+    }
+
+    // ------------------- Sequential -------------------
+    public AnalysisResult analyze(FileChannel channel) throws IOException {
+        return analyze(channel, AnalysisMonitor.NONE);
+    }
+
+    public AnalysisResult analyze(FileChannel channel, AnalysisMonitor monitor) throws IOException {
+        return analyze(channel, TextEncoding.detect(channel), monitor);
+    }
+
+    /** Counts the channel from its current position, which should be the start of the file. */
+    public AnalysisResult analyze(FileChannel channel, TextEncoding encoding, AnalysisMonitor monitor)
+            throws IOException {
+        return analyze(channel, encoding, monitor, Collections.emptyList());
+    }
+
+    public AnalysisResult analyze(FileChannel channel, TextEncoding encoding, AnalysisMonitor monitor,
+                                  List<StatisticsCollector> statistics) throws IOException {
+        long size = channel.size();
+        ByteBuffer buffer = buffers.get();
+        buffer.clear();
+        TextCounter counter = new TextCounter(encoding, statistics);
+        while (channel.read(buffer) != -1) {
+            if (monitor.isCancelled()) throw new CancellationException();
+            buffer.flip();
+            counter.update(buffer);
+            buffer.clear();
+            monitor.progress(counter.bytes(), size);
+        }
+        return counter.result();
+    }
+
+    // ------------------- Streams -------------------
+    /**
+     * Counts a stream to its end, detecting the encoding from its first
+     * {@link TextEncoding#SAMPLE_SIZE} bytes. It is read through one array per
+     * thread, reused by every stream the thread counts, so neither a long
+     * stream nor many short ones (the entries of a zip) allocate more. Progress
+     * is in bytes counted, with no total.
+     */
+    public AnalysisResult analyze(InputStream in, AnalysisMonitor monitor, List<StatisticsCollector> statistics)
+            throws IOException {
+        byte[] buf = streamBuffers.get();
+        int sampled = in.readNBytes(buf, 0, TextEncoding.SAMPLE_SIZE);
+        TextEncoding encoding = TextEncoding.detect(buf, sampled, sampled < TextEncoding.SAMPLE_SIZE);
+        TextCounter counter = new TextCounter(encoding, statistics);
+        counter.update(buf, 0, sampled);
+        int n;
+        while ((n = in.readNBytes(buf, 0, buf.length)) > 0) {
+            if (monitor.isCancelled()) throw new CancellationException();
+            counter.update(buf, 0, n);
+            monitor.progress(counter.bytes(), -1);
+        }
+        return counter.result();
+    }
+
+    // ------------------- Parallel (fork-join) -------------------
+    public AnalysisResult analyzeParallel(FileChannel channel) throws IOException {
+        return analyzeParallel(channel, AnalysisMonitor.NONE);
+    }
+
+    public AnalysisResult analyzeParallel(FileChannel channel, AnalysisMonitor monitor) throws IOException {
+        return analyzeParallel(channel, TextEncoding.detect(channel), monitor);
+    }
+
+    public AnalysisResult analyzeParallel(FileChannel channel, TextEncoding encoding, AnalysisMonitor monitor)
+            throws IOException {
+        return analyzeParallel(channel, encoding, monitor, Collections.emptyList());
+    }
+
+    public AnalysisResult analyzeParallel(FileChannel channel, TextEncoding encoding, AnalysisMonitor monitor,
+                                          List<StatisticsCollector> statistics) throws IOException {
+        if (encoding.kind() == TextEncoding.Kind.DECODED) return analyze(channel, encoding, monitor, statistics);
+        long size = channel.size();
+        if (size == 0) return new TextCounter(encoding, statistics).result();
+        SegmentTask root = new SegmentTask(channel, buffers, encoding, statistics, 0, size, segmentSize, monitor,
+                new AtomicLong(), size);
+        TextCounter counter;
+        try {
+            counter = pool.invoke(root);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        // the segments filled copies; hand the merged statistics to the caller's collectors
+        List<StatisticsCollector> merged = counter.statistics();
+        for (int i = 0; i < statistics.size(); i++) {
+            statistics.get(i).begin(encoding);
+            statistics.get(i).merge(merged.get(i));
+        }
+        return counter.result();
+    }
+
+    /**
+     * Counts {@code [start, end)} by splitting it in half until a piece is at
+     * most one segment, which is read through the thread's buffer. Partial
+     * counters are merged left to right, so words and CRLF pairs cut by a split
+     * are fixed up by {@link TextCounter#merge}; UTF-8 sequences are counted by
+     * their lead byte and validated across the cut.
+     */
+    private static final class SegmentTask extends RecursiveTask<TextCounter> {
+        private final FileChannel channel;
+        private final ThreadLocal<ByteBuffer> buffers;
+        private final TextEncoding encoding;
+        private final List<StatisticsCollector> statistics;
+        private final long start;
+        private final long end;
+        private final int segmentSize;
+        private final AnalysisMonitor monitor;
+        private final AtomicLong processed;
+        private final long total;
+
+        SegmentTask(FileChannel channel, ThreadLocal<ByteBuffer> buffers, TextEncoding encoding,
+                    List<StatisticsCollector> statistics, long start, long end, int segmentSize,
+                    AnalysisMonitor monitor, AtomicLong processed, long total) {
+            this.channel = channel;
+            this.buffers = buffers;
+            this.encoding = encoding;
+            this.statistics = statistics;
+            this.start = start;
+            this.end = end;
+            this.segmentSize = segmentSize;
+            this.monitor = monitor;
+            this.processed = processed;
+            this.total = total;
+        }
+
+        @Override
+        protected TextCounter compute() {
+            long length = end - start;
+            long bom = start == 0 ? encoding.bomLength() : 0; // the first segment holds the whole byte order mark
+            if (length <= Math.max(segmentSize, bom)) {
+                if (monitor.isCancelled()) throw new CancellationException();
+                List<StatisticsCollector> copies = new ArrayList<>(statistics.size());
+                for (StatisticsCollector c : statistics) copies.add(c.newSegment());
+                TextCounter counter = new TextCounter(CountingKernel.active(), encoding, start == 0, copies);
+                ByteBuffer buffer = buffers.get();
+                try {
+                    for (long position = start; position < end; ) {
+                        buffer.clear().limit((int) Math.min(buffer.capacity(), end - position));
+                        int n = channel.read(buffer, position);
+                        if (n <= 0) break; // truncated since the size was taken
+                        buffer.flip();
+                        counter.update(buffer);
+                        position += n;
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                monitor.progress(processed.addAndGet(length), total);
+                return counter;
+            }
+            long segments = (length + segmentSize - 1) / segmentSize;
+            long mid = Math.max(start + (segments / 2) * segmentSize, bom);
+            SegmentTask left = new SegmentTask(channel, buffers, encoding, statistics, start, mid, segmentSize,
+                    monitor, processed, total);
+            SegmentTask right = new SegmentTask(channel, buffers, encoding, statistics, mid, end, segmentSize,
+                    monitor, processed, total);
+            right.fork();
+            TextCounter counter = left.compute();
+            counter.merge(right.join());
+            return counter;
+        }
+    }
+}
@@ -0,0 +1,594 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Headless entry point: runs the same engine as the GUI without touching AWT
+ * or Swing, so it starts fast enough to be called per file from scripts.
+ *
+ * <pre>
+ * java FileAnalyzerCli [options] (path | glob | -)...
+ *   --format text|json|csv   output format (default text)
+ *   --jobs N                 files analysed concurrently (default 8)
+ *   --mode auto|sequential|parallel
+ *   --cache                  use the persistent result cache
+ *   --no-total               do not print the aggregate row
+ *   --stats                  also report top words, line lengths and byte entropy per input
+ *   --estimate               extrapolate large files from sampled blocks, with 95% margins
+ *   --metrics FILE           write analysis metrics as JSON to FILE ({@code -} for stderr) at exit
+ *   --self-test              check every counting kernel against the scalar one
+ * </pre>
+ * Directories are analysed recursively. {@code -} reads standard input. Each
+ * input's encoding is detected; the text format notes any input that is not
+ * well-formed UTF-8. Statistics are computed in the same pass as the counts;
+ * they bypass cache lookups and are left out of the csv format. Estimates read
+ * about 4 MB per file whatever its size (cached results are exact and used as
+ * such); standard input is always counted in full. Gzip, zip and jar files are
+ * counted by their decompressed content and also report their compressed size;
+ * the json format lists each entry. The metrics dump holds the
+ * {@link AnalysisMetrics} snapshot: time, throughput and allocation of every
+ * analysis, cache state and any errors.
+ * Exit status is 0 when every input was analysed, 1 when some failed, 2 on
+ * bad usage.
+ */
+public final class FileAnalyzerCli {
+
+    private FileAnalyzerCli() {}
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    static int run(String[] args) {
+        String format = "text";
+        int jobs = DirectoryAnalyzer.DEFAULT_IO_CONCURRENCY;
+        FileAnalysisEngine.Mode mode = FileAnalysisEngine.Mode.AUTO;
+        boolean useCache = false;
+        boolean total = true;
+        boolean stats = false;
+        boolean estimate = false;
+        String metrics = null;
+        List<String> inputs = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "--format":
+                        format = value(args, ++i, arg);
+                        break;
+                    case "--jobs":
+                        jobs = Integer.parseInt(value(args, ++i, arg));
+                        if (jobs <= 0) throw new IllegalArgumentException("--jobs must be positive");
+                        break;
+                    case "--mode":
+                        mode = FileAnalysisEngine.Mode.valueOf(value(args, ++i, arg).toUpperCase(Locale.ROOT));
+                        break;
+                    case "--cache":
+                        useCache = true;
+                        break;
+                    case "--no-total":
+                        total = false;
+                        break;
+                    case "--stats":
+                        stats = true;
+                        break;
+                    case "--estimate":
+                        estimate = true;
+                        break;
+                    case "--metrics":
+                        metrics = value(args, ++i, arg);
+                        break;
+                    case "--self-test":
+                        return selfTest();
+                    case "-h":
+                    case "--help":
+                        usage();
+                        return 0;
+                    default:
+                        if (arg.startsWith("--")) {
+                            System.err.println("Unknown option: " + arg);
+                            usage();
+                            return 2;
+                        }
+                        inputs.add(arg);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            usage();
+            return 2;
+        }
+        if (inputs.isEmpty()) {
+            usage();
+            return 2;
+        }
+        if (stats && estimate) {
+            System.err.println("--stats needs a full pass and cannot be combined with --estimate");
+            return 2;
+        }
+
+        Output out = Output.forFormat(format,
+                new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))));
+        if (out == null) {
+            System.err.println("Unknown format: " + format);
+            return 2;
+        }
+
+        FileAnalysisEngine engine = new FileAnalysisEngine();
+        AnalysisCache cache = useCache ? new AnalysisCache() : null;
+        if (cache != null) AnalysisMetrics.global().watch(cache);
+        DirectoryAnalyzer analyzer = new DirectoryAnalyzer(engine, jobs, cache, mode);
+        int status = 0;
+        out.begin();
+        try {
+            List<Path> paths = new ArrayList<>();
+            AnalysisResult sum = new AnalysisResult(0, 0, 0, 0);
+            long files = 0;
+            for (String input : inputs) {
+                if (input.equals("-")) {
+                    List<StatisticsCollector> statistics = stats
+                            ? StatisticsCollector.standard() : Collections.emptyList();
+                    AnalysisResult r = analyzeStream(System.in, statistics);
+                    out.row("-", r, statistics);
+                    sum = sum.plus(r);
+                    files++;
+                } else {
+                    int before = paths.size();
+                    expand(input, paths);
+                    if (paths.size() == before) {
+                        out.failed(input, "no such file or no match");
+                        status = 1;
+                    }
+                }
+            }
+            if (estimate) {
+                FileEstimator estimator = new FileEstimator(engine, FileEstimator.DEFAULT_BLOCKS,
+                        FileEstimator.DEFAULT_BLOCK_SIZE, new Random());
+                ArchiveAnalyzer archives = new ArchiveAnalyzer(engine);
+                for (Path file : regularFiles(paths)) {
+                    try {
+                        // compressed data cannot be sampled at random offsets, so archives are read in full
+                        ArchiveAnalyzer.Format compressed = ArchiveAnalyzer.detect(file);
+                        if (compressed != null) {
+                            ArchiveResult archive = archives.analyze(file, compressed);
+                            out.archive(file.toString(), archive);
+                            sum = sum.plus(archive.total());
+                            files++;
+                            continue;
+                        }
+                        AnalysisResult cached = cache != null ? cache.get(file) : null;
+                        AnalysisEstimate e = cached != null ? AnalysisEstimate.exact(cached) : estimator.estimate(file);
+                        out.estimated(file.toString(), e);
+                        sum = sum.plus(e.result());
+                        files++;
+                    } catch (IOException e) {
+                        out.failed(file.toString(), e.getMessage());
+                        status = 1;
+                    }
+                }
+            } else if (!paths.isEmpty()) {
+                DirectoryAnalyzer.Summary summary = analyzer.analyze(paths, new DirectoryAnalyzer.Listener() {
+                    @Override
+                    public void fileAnalyzed(Path file, AnalysisResult result) {
+                        out.row(file.toString(), result, Collections.emptyList());
+                    }
+
+                    @Override
+                    public void fileAnalyzed(Path file, AnalysisResult result, List<StatisticsCollector> statistics) {
+                        out.row(file.toString(), result, statistics);
+                    }
+
+                    @Override
+                    public void archiveAnalyzed(Path file, ArchiveResult archive) {
+                        out.archive(file.toString(), archive);
+                    }
+
+                    @Override
+                    public void fileFailed(Path file, IOException error) {
+                        out.failed(file.toString(), error.getMessage());
+                    }
+                }, AnalysisMonitor.NONE, stats ? StatisticsCollector::standard : null);
+                if (summary.failed() > 0) status = 1;
+                sum = sum.plus(summary.total());
+                files += summary.files();
+            }
+            if (total) out.total(files, sum);
+        } catch (IOException | UncheckedIOException e) {
+            AnalysisMetrics.global().problem("analysing inputs", e);
+            System.err.println("Error: " + e.getMessage());
+            status = 1;
+        } finally {
+            out.end();
+            analyzer.shutdown();
+            if (cache != null) {
+                try {
+                    cache.save();
+                } catch (IOException e) {
+                    AnalysisMetrics.global().problem("saving the analysis cache", e);
+                    System.err.println("Could not save analysis cache: " + e.getMessage());
+                }
+            }
+            if (metrics != null) writeMetrics(metrics);
+        }
+        return status;
+    }
+
+    private static void writeMetrics(String target) {
+        String json = AnalysisMetrics.global().dumpJson();
+        if (target.equals("-")) {
+            System.err.println(json);
+            return;
+        }
+        try {
+            Files.write(Paths.get(target), (json + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            System.err.println("Could not write metrics: " + e.getMessage());
+        }
+    }
+
+    /** Runs the differential corpus for every kernel that loads on this JVM. */
+    private static int selfTest() {
+        int status = 0;
+        System.out.println("active kernel: " + CountingKernel.active().name());
+        for (CountingKernel kernel : CountingKernel.available()) {
+            String mismatch = CountingKernel.verify(kernel, 3000, 16 * 1024);
+            System.out.println(kernel.name() + ": " + (mismatch == null ? "ok" : "FAILED " + mismatch));
+            if (mismatch != null) status = 1;
+        }
+        return status;
+    }
+
+    // ------------------- Inputs -------------------
+    /** Detects the encoding from the first {@link TextEncoding#SAMPLE_SIZE} bytes, then counts the stream. */
+    static AnalysisResult analyzeStream(InputStream in) throws IOException {
+        return analyzeStream(in, Collections.emptyList());
+    }
+
+    static AnalysisResult analyzeStream(InputStream in, List<StatisticsCollector> statistics) throws IOException {
+        AnalysisMetrics.Span span = AnalysisMetrics.global().start("stream", null);
+        try {
+            return span.finish(new FileAnalysisEngine().analyze(in, AnalysisMonitor.NONE, statistics));
+        } catch (IOException | RuntimeException | Error e) {
+            span.fail(e);
+            throw e;
+        }
+    }
+
+    /** The regular files among {@code roots} and below the directories among them. */
+    private static List<Path> regularFiles(List<Path> roots) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (Path root : roots) {
+            if (!Files.isDirectory(root)) {
+                files.add(root);
+                continue;
+            }
+            try (Stream<Path> walk = Files.walk(root)) {
+                walk.filter(Files::isRegularFile).forEach(files::add);
+            }
+        }
+        return files;
+    }
+
+    /** Adds {@code input} as-is if it exists, otherwise treats it as a glob below its literal prefix. */
+    private static void expand(String input, List<Path> paths) throws IOException {
+        Path literal = Paths.get(input);
+        if (Files.exists(literal) || !isGlob(input)) {
+            if (Files.exists(literal)) paths.add(literal);
+            return;
+        }
+        String normalized = input.replace('\\', '/');
+        int firstWildcard = firstWildcard(normalized);
+        int slash = normalized.lastIndexOf('/', firstWildcard);
+        Path base = slash < 0 ? Paths.get(".") : Paths.get(slash == 0 ? "/" : normalized.substring(0, slash));
+        if (!Files.isDirectory(base)) return;
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + input);
+        boolean relative = slash < 0;
+        try (Stream<Path> walk = Files.walk(base, FileVisitOption.FOLLOW_LINKS)) {
+            walk.filter(Files::isRegularFile)
+                    .map(p -> relative ? base.relativize(p) : p)
+                    .filter(matcher::matches)
+                    .forEach(paths::add);
+        }
+    }
+
+    private static boolean isGlob(String s) {
+        return firstWildcard(s) < s.length();
+    }
+
+    private static int firstWildcard(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '{') return i;
+        }
+        return s.length();
+    }
+
+    private static String value(String[] args, int i, String option) {
+        if (i >= args.length) throw new IllegalArgumentException(option + " needs a value");
+        return args[i];
+    }
+
+    private static void usage() {
+        System.err.println("Usage: java FileAnalyzerCli [--format text|json|csv] [--jobs N]"
+                + " [--mode auto|sequential|parallel] [--cache] [--no-total] [--stats | --estimate]"
+                + " [--metrics FILE] (path | glob | -)...");
+        System.err.println("       java FileAnalyzerCli --self-test");
+    }
+
+    // ------------------- Output Formats -------------------
+    /** Row methods may be called from several analysis threads. */
+    abstract static class Output {
+        final PrintWriter out;
+        boolean estimated; // some row was an estimate, so the total is one too
+
+        Output(PrintWriter out) {
+            this.out = out;
+        }
+
+        static Output forFormat(String format, PrintWriter out) {
+            switch (format.toLowerCase(Locale.ROOT)) {
+                case "text": return new TextOutput(out);
+                case "json": return new JsonOutput(out);
+                case "csv": return new CsvOutput(out);
+                default: return null;
+            }
+        }
+
+        void begin() {}
+
+        /** {@code statistics} is empty unless --stats was given. */
+        abstract void row(String name, AnalysisResult r, List<StatisticsCollector> statistics);
+
+        /** Formats that cannot show margins print the point estimates. */
+        synchronized void estimated(String name, AnalysisEstimate e) {
+            if (!e.exact()) estimated = true;
+            row(name, e.result(), Collections.emptyList());
+        }
+
+        /** Formats without room for the compressed size print the decompressed counts. */
+        void archive(String name, ArchiveResult a) {
+            row(name, a.total(), Collections.emptyList());
+        }
+
+        void failed(String name, String message) {
+            System.err.println(name + ": " + message);
+        }
+
+        abstract void total(long files, AnalysisResult r);
+
+        void end() {
+            out.flush();
+        }
+    }
+
+    static final class TextOutput extends Output {
+        TextOutput(PrintWriter out) {
+            super(out);
+        }
+
+        @Override
+        synchronized void row(String name, AnalysisResult r, List<StatisticsCollector> statistics) {
+            out.printf("%12d %14d %12d %14d  %s%s%n", r.words(), r.chars(), r.lines(), r.bytes(), name, note(r));
+            for (StatisticsCollector s : statistics) {
+                if (!s.applicable()) continue;
+                StringBuilder line = new StringBuilder("    ").append(s.name()).append(':');
+                for (Map.Entry<String, Object> e : s.summary().entrySet()) {
+                    line.append(' ').append(e.getKey()).append('=').append(e.getValue());
+                }
+                out.println(line);
+            }
+        }
+
+        @Override
+        synchronized void estimated(String name, AnalysisEstimate e) {
+            if (e.exact()) {
+                row(name, e.result(), Collections.emptyList());
+                return;
+            }
+            estimated = true;
+            AnalysisResult r = e.result();
+            out.printf("%12d %14d %12d %14d  %s%s  (estimate ±%.2f%%: words ±%d, chars ±%d, lines ±%d)%n",
+                    r.words(), r.chars(), r.lines(), r.bytes(), name, note(r), e.relativeError() * 100,
+                    e.wordsMargin(), e.charsMargin(), e.linesMargin());
+        }
+
+        @Override
+        synchronized void archive(String name, ArchiveResult a) {
+            AnalysisResult r = a.total();
+            out.printf("%12d %14d %12d %14d  %s%s  (%s, %d entries, %d bytes compressed)%n", r.words(), r.chars(),
+                    r.lines(), r.bytes(), name, note(r), a.format().label(), a.entries().size(), a.compressedBytes());
+        }
+
+        @Override
+        synchronized void total(long files, AnalysisResult r) {
+            out.printf("%12d %14d %12d %14d  total (%d files)%s%s%n", r.words(), r.chars(), r.lines(), r.bytes(), files,
+                    note(r), estimated ? "  (estimate)" : "");
+        }
+
+        /** Flags anything that is not plain, well-formed UTF-8. */
+        private static String note(AnalysisResult r) {
+            boolean plain = r.encoding() == null || r.encoding().equals("UTF-8");
+            if (plain && r.malformed() == 0) return "";
+            String malformed = r.malformed() > 0 ? r.malformed() + " malformed" : "";
+            if (plain) return "  (" + malformed + ")";
+            return "  (" + r.encoding() + (malformed.isEmpty() ? "" : ", " + malformed) + ")";
+        }
+    }
+
+    static final class CsvOutput extends Output {
+        CsvOutput(PrintWriter out) {
+            super(out);
+        }
+
+        @Override
+        void begin() {
+            out.println("path,words,chars,lines,bytes,codepoints,malformed,encoding");
+        }
+
+        @Override
+        synchronized void row(String name, AnalysisResult r, List<StatisticsCollector> statistics) {
+            out.println(csv(name) + "," + counts(r));
+        }
+
+        @Override
+        synchronized void total(long files, AnalysisResult r) {
+            out.println("TOTAL," + counts(r));
+        }
+
+        private static String counts(AnalysisResult r) {
+            return r.words() + "," + r.chars() + "," + r.lines() + "," + r.bytes() + "," + r.codePoints() + ","
+                    + r.malformed() + "," + (r.encoding() != null ? r.encoding() : "");
+        }
+
+        private static String csv(String s) {
+            if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0 && !s.equals("TOTAL")) return s;
+            return '"' + s.replace("\"", "\"\"") + '"';
+        }
+    }
+
+    static final class JsonOutput extends Output {
+        private boolean first = true;
+        private boolean arrayClosed;
+
+        JsonOutput(PrintWriter out) {
+            super(out);
+        }
+
+        @Override
+        void begin() {
+            out.print("{\"files\":[");
+        }
+
+        @Override
+        synchronized void row(String name, AnalysisResult r, List<StatisticsCollector> statistics) {
+            out.print(first ? "\n  " : ",\n  ");
+            first = false;
+            out.print("{\"path\":" + Json.string(name) + "," + Json.counts(r));
+            if (!statistics.isEmpty()) {
+                out.print(",\"stats\":{");
+                String separator = "";
+                for (StatisticsCollector s : statistics) {
+                    if (!s.applicable()) continue;
+                    out.print(separator + Json.string(s.name()) + ":" + Json.value(s.summary()));
+                    separator = ",";
+                }
+                out.print("}");
+            }
+            out.print("}");
+        }
+
+        @Override
+        synchronized void estimated(String name, AnalysisEstimate e) {
+            out.print(first ? "\n  " : ",\n  ");
+            first = false;
+            out.print("{\"path\":" + Json.string(name) + "," + Json.counts(e.result()));
+            if (!e.exact()) {
+                estimated = true;
+                out.print(",\"estimate\":{\"confidence\":" + AnalysisEstimate.CONFIDENCE
+                        + ",\"sampledBytes\":" + e.sampledBytes() + ",\"wordsMargin\":" + e.wordsMargin()
+                        + ",\"charsMargin\":" + e.charsMargin() + ",\"codePointsMargin\":" + e.codePointsMargin()
+                        + ",\"linesMargin\":" + e.linesMargin() + "}");
+            }
+            out.print("}");
+        }
+
+        @Override
+        synchronized void archive(String name, ArchiveResult a) {
+            out.print(first ? "\n  " : ",\n  ");
+            first = false;
+            out.print("{\"path\":" + Json.string(name) + "," + Json.counts(a.total()) + ",\"archive\":{\"format\":"
+                    + Json.string(a.format().label()) + ",\"compressedBytes\":" + a.compressedBytes()
+                    + ",\"entries\":[");
+            String separator = "";
+            for (ArchiveResult.Entry e : a.entries()) {
+                out.print(separator + "{\"name\":" + Json.string(e.name()) + ",\"compressedBytes\":"
+                        + e.compressedBytes() + "," + Json.counts(e.result()) + "}");
+                separator = ",";
+            }
+            out.print("]}}");
+        }
+
+        @Override
+        synchronized void total(long files, AnalysisResult r) {
+            out.print("\n],\n\"total\":{\"files\":" + files + "," + Json.counts(r)
+                    + (estimated ? ",\"estimated\":true" : "") + "}");
+            arrayClosed = true;
+        }
+
+        @Override
+        void end() {
+            if (!arrayClosed) out.print("\n]");
+            out.println("}");
+            out.flush();
+        }
+    }
+
+    static final class Json {
+        private Json() {}
+
+        static String counts(AnalysisResult r) {
+            return "\"words\":" + r.words() + ",\"chars\":" + r.chars() + ",\"codePoints\":" + r.codePoints()
+                    + ",\"lines\":" + r.lines() + ",\"bytes\":" + r.bytes() + ",\"malformed\":" + r.malformed()
+                    + (r.encoding() != null ? ",\"encoding\":" + string(r.encoding()) : "");
+        }
+
+        /** Maps, lists, numbers, booleans and strings, as produced by {@link StatisticsCollector#summary()}. */
+        static String value(Object v) {
+            if (v == null) return "null";
+            if (v instanceof Number || v instanceof Boolean) return v.toString();
+            if (v instanceof Map) {
+                StringBuilder sb = new StringBuilder("{");
+                for (Map.Entry<?, ?> e : ((Map<?, ?>) v).entrySet()) {
+                    if (sb.length() > 1) sb.append(',');
+                    sb.append(string(String.valueOf(e.getKey()))).append(':').append(value(e.getValue()));
+                }
+                return sb.append('}').toString();
+            }
+            if (v instanceof List) {
+                StringBuilder sb = new StringBuilder("[");
+                for (Object o : (List<?>) v) {
+                    if (sb.length() > 1) sb.append(',');
+                    sb.append(value(o));
+                }
+                return sb.append(']').toString();
+            }
+            return string(v.toString());
+        }
+
+        static String string(String s) {
+            StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                switch (c) {
+                    case '"': sb.append("\\\""); break;
+                    case '\\': sb.append("\\\\"); break;
+                    case '\n': sb.append("\\n"); break;
+                    case '\r': sb.append("\\r"); break;
+                    case '\t': sb.append("\\t"); break;
+                    default:
+                        if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                        else sb.append(c);
+                }
+            }
+            return sb.append('"').toString();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * Estimates the counts of a huge file from a few blocks instead of reading all
+ * of it.
+ *
+ * The file is cut into {@code blocks} equal strata and one block of
+ * {@code blockSize} bytes is read at a random offset inside each, with
+ * positional reads in file order. Each block is counted with a
+ * {@link TextCounter} and the totals are extrapolated as count per sampled
+ * byte times the file size. Margins are the {@link AnalysisEstimate#CONFIDENCE}
+ * Student-t interval of that mean, treating the blocks as a simple random
+ * sample, which overstates the error of a stratified one. On very regular
+ * input (base64, fixed-width records) a block's count only moves by one as
+ * its start slides, so most blocks agree and their variance understates the
+ * error; the per-block variance is then taken to be at least that of a count
+ * that is off by one half the time.
+ *
+ * A word or CRLF pair cut by the start of a block is attributed to the block
+ * it started in by looking at the byte before, so the estimate is unbiased for
+ * byte-counted encodings. Decoded encodings align blocks to their code unit
+ * and may count one partial word or line per block. Files too small to be
+ * worth sampling are counted exactly.
+ */
+public class FileEstimator {
+
+    public static final int DEFAULT_BLOCKS = 64;
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    private static final double Z = 1.959964; // two-sided 95% normal quantile
+    private static final double LATTICE_VARIANCE = 0.25; // of a count that is n or n + 1, at most
+
+    private final FileAnalysisEngine engine;
+    private final int blocks;
+    private final int blockSize;
+    private final Random random;
+
+    public FileEstimator() {
+        this(new FileAnalysisEngine(), DEFAULT_BLOCKS, DEFAULT_BLOCK_SIZE, new Random());
+    }
+
+    /** {@code engine} counts files too small to sample; a seeded {@code random} makes estimates repeatable. */
+    public FileEstimator(FileAnalysisEngine engine, int blocks, int blockSize, Random random) {
+        if (blocks < 2) throw new IllegalArgumentException("blocks must be at least 2");
+        if (blockSize <= 0) throw new IllegalArgumentException("blockSize must be positive");
+        this.engine = engine;
+        this.blocks = blocks;
+        this.blockSize = blockSize;
+        this.random = random;
+    }
+
+    public AnalysisEstimate estimate(Path path) throws IOException {
+        AnalysisMetrics.Span span = AnalysisMetrics.global().start("estimate", path);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            AnalysisEstimate estimate = estimate(channel, TextEncoding.detect(channel));
+            span.finish(estimate.sampledBytes());
+            return estimate;
+        } catch (IOException | RuntimeException | Error e) {
+            span.fail(e);
+            throw e;
+        }
+    }
+
+    public AnalysisEstimate estimate(FileChannel channel, TextEncoding encoding) throws IOException {
+        long size = channel.size();
+        if (size <= 2L * blocks * blockSize) {
+            return AnalysisEstimate.exact(engine.analyze(channel, encoding, AnalysisMonitor.NONE));
+        }
+        boolean decoded = encoding.kind() == TextEncoding.Kind.DECODED;
+        int unit = decoded ? codeUnit(encoding) : 1;
+        long first = encoding.bomLength();
+        long content = size - first;
+        long stratum = content / blocks;
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(blockSize + 1);
+        double[] words = new double[blocks];
+        double[] chars = new double[blocks];
+        double[] codePoints = new double[blocks];
+        double[] terminators = new double[blocks];
+        long sampled = 0;
+        for (int i = 0; i < blocks; i++) {
+            long start = first + i * stratum + (long) (random.nextDouble() * (stratum - blockSize));
+            start -= (start - first) % unit;
+            if (start == 0) start = unit;
+            // one byte before the block tells whether its first word or CRLF started earlier
+            buffer.clear();
+            long from = start - 1;
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, from + buffer.position()) < 0) break;
+            }
+            buffer.flip();
+            int prev = buffer.get(0) & 0xFF;
+            int firstByte = buffer.get(1) & 0xFF;
+            buffer.position(1);
+            TextCounter counter = new TextCounter(CountingKernel.active(), encoding, false);
+            counter.update(buffer);
+            AnalysisResult r = counter.result();
+            words[i] = counter.words;
+            terminators[i] = counter.terminators;
+            if (!decoded) {
+                if (!TextCounter.WHITESPACE[prev] && !TextCounter.WHITESPACE[firstByte]) words[i]--;
+                if (prev == '\r' && firstByte == '\n') terminators[i]--;
+            }
+            chars[i] = r.chars();
+            codePoints[i] = r.codePoints();
+            sampled += buffer.limit();
+        }
+
+        double scale = (double) content / blockSize;
+        double fraction = (double) blocks * blockSize / content;
+        long lastLine = decoded ? 0 : unterminated(channel, size);
+        AnalysisResult result = new AnalysisResult(total(words, scale), total(chars, scale),
+                total(codePoints, scale), total(terminators, scale) + lastLine, size, 0, encoding.label());
+        return new AnalysisEstimate(result, margin(words, scale, fraction), margin(chars, scale, fraction),
+                margin(codePoints, scale, fraction), margin(terminators, scale, fraction), sampled);
+    }
+
+    /** 1 if the file does not end with a line terminator, so its last line was not counted. */
+    private static long unterminated(FileChannel channel, long size) throws IOException {
+        ByteBuffer last = ByteBuffer.allocate(1);
+        channel.read(last, size - 1);
+        int b = last.get(0);
+        return b == '\n' || b == '\r' ? 0 : 1;
+    }
+
+    private static int codeUnit(TextEncoding encoding) {
+        if (!encoding.charset().canEncode()) return 1;
+        return Math.max(1, (int) encoding.charset().newEncoder().averageBytesPerChar());
+    }
+
+    private static long total(double[] perBlock, double scale) {
+        return Math.round(mean(perBlock) * scale);
+    }
+
+    private static long margin(double[] perBlock, double scale, double fraction) {
+        double mean = mean(perBlock);
+        double squares = 0;
+        for (double x : perBlock) squares += (x - mean) * (x - mean);
+        int df = perBlock.length - 1;
+        double variance = Math.max(squares / df, LATTICE_VARIANCE);
+        // first-order Cornish-Fisher correction from the normal to the t quantile
+        double t = Z * (1 + (Z * Z + 1) / (4.0 * df));
+        return (long) Math.ceil(t * scale * Math.sqrt(Math.max(0, 1 - fraction) * variance / perBlock.length));
+    }
+
+    private static double mean(double[] values) {
+        double sum = 0;
+        for (double v : values) sum += v;
+        return sum / values.length;
+    }
+}
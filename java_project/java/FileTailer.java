@@ -0,0 +1,159 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * Keeps the counts of a growing (append-only) file up to date.
+ *
+ * After one full pass the {@link TextCounter} is kept alive: its byte count is
+ * the resume offset and it carries the in-word and pending-CR state. A UTF-8
+ * sequence cut at the old end of file needs no extra state because only lead
+ * bytes are counted, and a decoded charset keeps the partial character staged.
+ * The encoding is detected on the first pass and again on every re-scan. When
+ * the directory's {@link WatchService} reports a change, only the bytes past
+ * that offset are read, so an update costs what was appended. The file is re-scanned from the start only if it shrank or a
+ * CRC32C of its first block no longer matches (truncate-and-rewrite, rotation).
+ * The watch is backed by a one-second size check for platforms whose
+ * WatchService is slow to report.
+ */
+public class FileTailer implements Closeable {
+
+    private static final int HEAD_BLOCK = 4096;
+    private static final long POLL_SECONDS = 1;
+
+    /** Called on the tailer's thread. */
+    public interface Listener {
+        void updated(AnalysisResult result, boolean rescanned);
+
+        default void failed(IOException error) {}
+    }
+
+    private final Path file;
+    private final Listener listener;
+    private TextCounter counter;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(FileAnalysisEngine.DEFAULT_BUFFER_SIZE);
+    private final ByteBuffer head = ByteBuffer.allocate(HEAD_BLOCK);
+    private long headHash;
+    private int headLength;
+    private WatchService watcher;
+    private volatile boolean closed;
+
+    public FileTailer(Path file, Listener listener) {
+        this.file = file.toAbsolutePath();
+        this.listener = listener;
+    }
+
+    /**
+     * Counts the whole file, then starts watching it. Returns the initial
+     * result; later ones go to the listener.
+     */
+    public synchronized AnalysisResult start(AnalysisMonitor monitor) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            counter = new TextCounter(TextEncoding.detect(channel));
+            readFrom(channel, channel.size(), monitor);
+        }
+        watcher = FileSystems.getDefault().newWatchService();
+        file.getParent().register(watcher, StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_CREATE);
+        Thread thread = new Thread(this::watchLoop, "file-tailer-" + file.getFileName());
+        thread.setDaemon(true);
+        thread.start();
+        return counter.result();
+    }
+
+    public synchronized AnalysisResult current() {
+        return counter.result();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            if (watcher != null) watcher.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    // ------------------- Watch Loop -------------------
+    private void watchLoop() {
+        while (!closed) {
+            try {
+                WatchKey key = watcher.poll(POLL_SECONDS, TimeUnit.SECONDS);
+                if (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                }
+                refresh();
+            } catch (ClosedWatchServiceException | InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                if (!closed) listener.failed(e);
+            }
+        }
+    }
+
+    private void refresh() throws IOException {
+        if (!Files.isRegularFile(file)) return; // mid-rotation; wait for the new file
+        AnalysisResult result;
+        boolean rescan;
+        synchronized (this) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = channel.size();
+                long offset = counter.bytes();
+                rescan = size < offset || headHash(channel, headLength) != headHash;
+                if (rescan) {
+                    counter = new TextCounter(TextEncoding.detect(channel));
+                    headLength = 0;
+                } else if (size == offset) {
+                    return;
+                }
+                readFrom(channel, size, AnalysisMonitor.NONE);
+            }
+            result = counter.result();
+        }
+        listener.updated(result, rescan);
+    }
+
+    /** Feeds {@code [counter.bytes(), size)} to the counter and refreshes the head fingerprint. */
+    private void readFrom(FileChannel channel, long size, AnalysisMonitor monitor) throws IOException {
+        long position = counter.bytes();
+        while (position < size) {
+            if (monitor.isCancelled()) throw new CancellationException();
+            buffer.clear();
+            if (size - position < buffer.capacity()) buffer.limit((int) (size - position));
+            int n = channel.read(buffer, position);
+            if (n < 0) break;
+            buffer.flip();
+            counter.update(buffer);
+            position += n;
+            monitor.progress(position, size);
+        }
+        if (headLength < HEAD_BLOCK) {
+            headLength = (int) Math.min(HEAD_BLOCK, counter.bytes());
+            headHash = headHash(channel, headLength);
+        }
+    }
+
+    private long headHash(FileChannel channel, int length) throws IOException {
+        head.clear().limit(length);
+        while (head.hasRemaining()) {
+            if (channel.read(head, head.position()) < 0) return -1;
+        }
+        head.flip();
+        CRC32C crc = new CRC32C();
+        crc.update(head);
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,285 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Sparse index of line start offsets, built in the counting pass so that a
+ * viewer can jump to any line of a giant file without reading up to it.
+ *
+ * Every {@code stride}-th line start is kept as a checkpoint: its 0-based line
+ * number and byte offset, in two {@code long[]}s. Line {@code n} is then found
+ * at the last checkpoint before it plus at most one stride of lines read
+ * forward. Lines are split like the line count ({@code \n}, {@code \r} or
+ * {@code \r\n}). The index never holds more than {@link #MAX_CHECKPOINTS}
+ * checkpoints (1 MB): past that every other one is dropped and the stride
+ * doubles, so its size does not grow with the file.
+ *
+ * Segments of a parallel pass number their lines from their own start, so each
+ * one also keeps its first line start; merging shifts them by the lines before.
+ * A segment with fewer lines than the stride still leaves a checkpoint, and no
+ * two checkpoints are more than one stride apart, but which lines become
+ * checkpoints depends on where the segments were cut. Offsets are in the
+ * file, byte order mark included.
+ */
+public final class LineIndex extends StatisticsCollector {
+
+    public static final int DEFAULT_STRIDE = 1024;
+    public static final int MAX_CHECKPOINTS = 1 << 16;
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long HIGH = 0x8080808080808080L;
+    private static final long BREAKS = 0x0E0E0E0E0E0E0E0EL; // bytes below this may be \n or \r
+
+    private final int initialStride;
+    private int stride;
+    private long[] lines = new long[64];
+    private long[] offsets = new long[64];  // after the byte order mark
+    private int count;
+
+    private int bomLength;
+    private long terminators;
+    private long bytes;
+    private boolean any;
+    private boolean firstLF;
+    private boolean lastCR;
+    private boolean checkpointAtCR;         // the last checkpoint follows a CR whose LF may come next
+    private boolean trailing;               // bytes after the last terminator
+
+    public LineIndex() {
+        this(DEFAULT_STRIDE);
+    }
+
+    /** {@code stride} must be a power of two. */
+    public LineIndex(int stride) {
+        if (stride <= 0 || Integer.bitCount(stride) != 1) throw new IllegalArgumentException("stride must be a power of two");
+        this.initialStride = stride;
+        this.stride = stride;
+    }
+
+    @Override
+    public String name() {
+        return "lineIndex";
+    }
+
+    @Override
+    void begin(TextEncoding encoding) {
+        super.begin(encoding);
+        bomLength = encoding.bomLength();
+    }
+
+    @Override
+    void update(byte[] data, int off, int len) {
+        if (len <= 0) return;
+        if (!any) {
+            any = true;
+            firstLF = data[off] == '\n';
+        }
+        long base = bytes - off; // offset of data[0]
+        boolean cr = lastCR;
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+            if (end - i >= 8) {
+                long x = (long) LONGS.get(data, i);
+                if (((x - BREAKS) & ~x & HIGH) == 0) { // eight bytes without a line break
+                    cr = false;
+                    i += 7;
+                    continue;
+                }
+            }
+            byte b = data[i];
+            if (b > '\r') {
+                cr = false;
+            } else if (b == '\n') {
+                if (cr) {
+                    cr = false; // second half of CRLF: the line starts after it
+                    if (checkpointAtCR) offsets[count - 1]++;
+                    checkpointAtCR = false;
+                } else {
+                    terminator(base + i + 1, false);
+                }
+            } else if (b == '\r') {
+                terminator(base + i + 1, true);
+                cr = true;
+            } else {
+                cr = false;
+            }
+        }
+        byte last = data[end - 1];
+        trailing = last != '\n' && last != '\r';
+        lastCR = cr;
+        bytes += len;
+    }
+
+    private void terminator(long lineStart, boolean cr) {
+        terminators++;
+        boolean checkpoint = terminators == 1 || (terminators & (stride - 1)) == 0;
+        if (checkpoint) add(terminators, lineStart);
+        checkpointAtCR = checkpoint && cr;
+    }
+
+    private void add(long line, long offset) {
+        if (count == MAX_CHECKPOINTS) {
+            // keep every other checkpoint, the first line start included, so the gaps stay within the doubled stride
+            int kept = 0;
+            for (int i = 0; i < count; i += 2, kept++) {
+                lines[kept] = lines[i];
+                offsets[kept] = offsets[i];
+            }
+            count = kept;
+            stride *= 2;
+        }
+        if (count == lines.length) {
+            lines = Arrays.copyOf(lines, count * 2);
+            offsets = Arrays.copyOf(offsets, count * 2);
+        }
+        lines[count] = line;
+        offsets[count] = offset;
+        count++;
+    }
+
+    @Override
+    public StatisticsCollector newSegment() {
+        return new LineIndex(initialStride);
+    }
+
+    @Override
+    public void merge(StatisticsCollector other) {
+        LineIndex next = (LineIndex) other;
+        if (!next.any) return;
+        if (!any) {
+            copyFrom(next);
+            return;
+        }
+        boolean crlf = lastCR && next.firstLF;
+        if (crlf && checkpointAtCR) offsets[count - 1]++;
+        // next counted the LF of our CRLF as a line of its own
+        long shift = crlf ? terminators - 1 : terminators;
+        long last = count > 0 ? lines[count - 1] : 0;
+        stride = Math.max(stride, next.stride);
+        for (int i = 0; i < next.count; i++) {
+            long line = next.lines[i] + shift;
+            if (line > last) add(line, next.offsets[i] + bytes);
+        }
+        terminators = shift + next.terminators;
+        bytes += next.bytes;
+        lastCR = next.lastCR;
+        checkpointAtCR = next.count > 0 && next.checkpointAtCR;
+        trailing = next.trailing;
+    }
+
+    private void copyFrom(LineIndex o) {
+        stride = o.stride;
+        lines = o.lines.clone();
+        offsets = o.offsets.clone();
+        count = o.count;
+        bomLength = o.bomLength;
+        terminators = o.terminators;
+        bytes = o.bytes;
+        any = o.any;
+        firstLF = o.firstLF;
+        lastCR = o.lastCR;
+        checkpointAtCR = o.checkpointAtCR;
+        trailing = o.trailing;
+    }
+
+    @Override
+    public void reset() {
+        copyFrom(new LineIndex(initialStride));
+    }
+
+    // ------------------- Lookup -------------------
+    /** Lines in the input, counted like {@link AnalysisResult#lines()}. */
+    public long lineCount() {
+        return terminators + (trailing ? 1 : 0);
+    }
+
+    /** The charset the lines are in; the index only applies to byte-counted ones. */
+    public Charset charset() {
+        return encoding.charset();
+    }
+
+    public int stride() {
+        return stride;
+    }
+
+    public int checkpoints() {
+        return count;
+    }
+
+    /** The last checkpoint at or before 0-based {@code line}; -1 stands for the start of the file. */
+    public int floor(long line) {
+        int lo = 0;
+        int hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (lines[mid] <= line) lo = mid + 1;
+            else hi = mid - 1;
+        }
+        return hi;
+    }
+
+    /** The 0-based line that starts at {@code checkpoint}. */
+    public long lineAt(int checkpoint) {
+        return checkpoint < 0 ? 0 : lines[checkpoint];
+    }
+
+    /** The file offset at which the line of {@code checkpoint} starts. */
+    public long offsetAt(int checkpoint) {
+        return bomLength + (checkpoint < 0 ? 0 : offsets[checkpoint]);
+    }
+
+    // ------------------- Persistence -------------------
+    void write(DataOutputStream out) throws IOException {
+        out.writeUTF(encoding.charset().name());
+        out.writeInt(stride);
+        out.writeInt(bomLength);
+        out.writeLong(terminators);
+        out.writeBoolean(trailing);
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            out.writeLong(lines[i]);
+            out.writeLong(offsets[i]);
+        }
+    }
+
+    static LineIndex read(DataInputStream in) throws IOException {
+        String charset = in.readUTF();
+        int stride = in.readInt();
+        if (!Charset.isSupported(charset) || stride <= 0 || Integer.bitCount(stride) != 1) {
+            throw new IOException("corrupt line index");
+        }
+        LineIndex index = new LineIndex(stride);
+        index.begin(TextEncoding.of(Charset.forName(charset)));
+        index.bomLength = in.readInt();
+        index.terminators = in.readLong();
+        index.trailing = in.readBoolean();
+        int count = in.readInt();
+        if (count < 0 || count > MAX_CHECKPOINTS) throw new IOException("corrupt line index");
+        index.lines = new long[Math.max(1, count)];
+        index.offsets = new long[Math.max(1, count)];
+        for (int i = 0; i < count; i++) {
+            index.lines[i] = in.readLong();
+            index.offsets[i] = in.readLong();
+        }
+        index.count = count;
+        index.any = true;
+        return index;
+    }
+
+    @Override
+    public Map<String, Object> summary() {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("lines", lineCount());
+        summary.put("checkpoints", count);
+        summary.put("stride", stride);
+        summary.put("bytes", 16L * count);
+        return summary;
+    }
+}
@@ -0,0 +1,195 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Line-length histogram and longest line, with lines split exactly as the
+ * line count splits them ({@code \n}, {@code \r} or {@code \r\n}). Lengths are
+ * in characters (code points), without the terminator. Buckets are powers of
+ * two: 0, 1, 2-3, 4-7, ...
+ *
+ * A segment does not know whether its first line started in the previous
+ * segment, so that line (the head) is held back until {@link #merge} joins it
+ * to the previous segment's open last line, or until the result is read; the
+ * same goes for an LF whose CR ended the previous segment.
+ */
+public final class LineLengths extends StatisticsCollector {
+
+    private final long[] buckets = new long[65];
+    private long recorded;        // lines in the buckets
+    private long totalLength;
+    private long longest = -1;
+    private long longestLine;     // 0-based, relative to this segment's head line
+
+    private boolean any;
+    private boolean firstLF;
+    private boolean sawTerminator;
+    private long headLength;
+    private long closed;          // terminators seen, head included
+    private long open;            // characters since the last terminator
+    private boolean pending;      // non-terminator bytes since the last terminator
+    private boolean lastCR;
+
+    @Override
+    public String name() {
+        return "lines";
+    }
+
+    @Override
+    void update(byte[] data, int off, int len) {
+        if (len <= 0) return;
+        if (!any) {
+            any = true;
+            firstLF = data[off] == '\n';
+        }
+        boolean utf8 = encoding.kind() == TextEncoding.Kind.UTF8;
+        long chars = open;
+        boolean cr = lastCR;
+        boolean text = pending;
+        int i = off;
+        int end = off + len;
+        while (i < end) {
+            int b = data[i];
+            if (b == '\n' || b == '\r') {
+                i++;
+                if (b == '\n' && cr) {
+                    cr = false; // second half of CRLF
+                    continue;
+                }
+                close(chars);
+                chars = 0;
+                text = false;
+                cr = b == '\r';
+                continue;
+            }
+            int start = i;
+            int continuations = 0;
+            if (utf8) {
+                while (i < end && (b = data[i]) != '\n' && b != '\r') {
+                    continuations += (b & 0xC0) == 0x80 ? 1 : 0;
+                    i++;
+                }
+            } else {
+                while (i < end && (b = data[i]) != '\n' && b != '\r') i++;
+            }
+            chars += i - start - continuations;
+            text = true;
+            cr = false;
+        }
+        open = chars;
+        lastCR = cr;
+        pending = text;
+    }
+
+    private void close(long length) {
+        if (sawTerminator) {
+            record(length, closed);
+        } else {
+            sawTerminator = true;
+            headLength = length;
+        }
+        closed++;
+    }
+
+    private void record(long length, long line) {
+        buckets[64 - Long.numberOfLeadingZeros(length)]++;
+        recorded++;
+        totalLength += length;
+        if (length > longest) {
+            longest = length;
+            longestLine = line;
+        }
+    }
+
+    @Override
+    public StatisticsCollector newSegment() {
+        return new LineLengths();
+    }
+
+    @Override
+    public void merge(StatisticsCollector other) {
+        LineLengths next = (LineLengths) other;
+        if (!next.any) return;
+        if (!any) {
+            copyFrom(next);
+            return;
+        }
+        if (!next.sawTerminator) {
+            open += next.open;
+            pending |= next.pending;
+            lastCR = false;
+            return;
+        }
+        long shift;
+        if (lastCR && next.firstLF) {
+            shift = closed - 1; // next's first terminator is the LF of our CRLF, not a line
+        } else {
+            long head = open + next.headLength;
+            if (sawTerminator) {
+                record(head, closed);
+            } else {
+                sawTerminator = true;
+                headLength = head;
+            }
+            shift = closed;
+        }
+        for (int k = 0; k < buckets.length; k++) buckets[k] += next.buckets[k];
+        recorded += next.recorded;
+        totalLength += next.totalLength;
+        if (next.longest > longest) {
+            longest = next.longest;
+            longestLine = next.longestLine + shift;
+        }
+        closed = shift + next.closed;
+        open = next.open;
+        pending = next.pending;
+        lastCR = next.lastCR;
+    }
+
+    private void copyFrom(LineLengths o) {
+        System.arraycopy(o.buckets, 0, buckets, 0, buckets.length);
+        recorded = o.recorded;
+        totalLength = o.totalLength;
+        longest = o.longest;
+        longestLine = o.longestLine;
+        any = o.any;
+        firstLF = o.firstLF;
+        sawTerminator = o.sawTerminator;
+        headLength = o.headLength;
+        closed = o.closed;
+        open = o.open;
+        pending = o.pending;
+        lastCR = o.lastCR;
+    }
+
+    @Override
+    public void reset() {
+        copyFrom(new LineLengths());
+    }
+
+    @Override
+    public Map<String, Object> summary() {
+        // the head and an unterminated last line are only complete once the input is
+        LineLengths all = new LineLengths();
+        all.copyFrom(this);
+        if (sawTerminator) {
+            all.closed = 0;
+            all.record(headLength, 0);
+            all.closed = closed;
+        }
+        if (pending) all.record(open, closed);
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("lines", all.recorded);
+        summary.put("longest", Math.max(0, all.longest));
+        summary.put("longestLine", all.recorded > 0 ? all.longestLine + 1 : 0);
+        summary.put("meanLength", all.recorded > 0 ? Math.round(10.0 * all.totalLength / all.recorded) / 10.0 : 0.0);
+        Map<String, Object> histogram = new LinkedHashMap<>();
+        for (int k = 0; k < all.buckets.length; k++) {
+            if (all.buckets[k] == 0) continue;
+            long low = k == 0 ? 0 : 1L << (k - 1);
+            long high = k == 0 ? 0 : (k == 64 ? Long.MAX_VALUE : (1L << k) - 1);
+            histogram.put(low == high ? Long.toString(low) : low + "-" + high, all.buckets[k]);
+        }
+        summary.put("histogram", histogram);
+        return summary;
+    }
+}
@@ -0,0 +1,298 @@
+import com.formdev.flatlaf.FlatClientProperties;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.*;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only view of a text file of any size, opened at any line at once.
+ *
+ * Only the visible lines are read: the {@link LineIndex} gives the checkpoint
+ * before the first of them and at most about one stride of lines is read
+ * forward from there, or from the last line shown when scrolling by a few.
+ * The file is read through one memory-mapped window of {@link Lines#WINDOW}
+ * bytes at a time and at most {@link #MAX_LINE_BYTES} of a line are decoded,
+ * so memory does not grow with the file or its longest line.
+ *
+ * Ctrl+G goes to the line number field; lines are numbered from 1.
+ */
+final class LinePreview extends JPanel implements Closeable {
+
+    static final int MAX_LINE_BYTES = 4096;
+    private static final int GUTTER_PAD = 10;
+
+    private final Lines lines;
+    private final Charset charset;
+    private final long lineCount;
+    private final long scale; // lines per scroll bar unit; above 1 only past 2^31 lines
+    private final View view = new View();
+    private final JScrollBar scrollBar = new JScrollBar(JScrollBar.VERTICAL);
+    private final JTextField gotoField = new JTextField(12);
+    private final JLabel position = new JLabel();
+    private long top;          // first visible line, 0-based
+    private long marked = -1;  // the line last gone to
+    private boolean syncing;   // the scroll bar is being moved to match top
+
+    LinePreview(Path file, LineIndex index) throws IOException {
+        super(new BorderLayout());
+        this.lines = new Lines(file, index);
+        this.charset = index.charset();
+        this.lineCount = Math.max(1, index.lineCount());
+        this.scale = (lineCount - 1) / (Integer.MAX_VALUE - 1) + 1;
+
+        view.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 13));
+        view.setFocusable(true);
+        view.addMouseWheelListener(e -> scrollTo(top + (long) e.getWheelRotation() * 3));
+        view.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                view.requestFocusInWindow();
+            }
+        });
+        view.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                scrollTo(top);
+            }
+        });
+        scrollBar.addAdjustmentListener(e -> {
+            if (!syncing) scrollTo(e.getValue() * scale);
+        });
+
+        gotoField.putClientProperty(FlatClientProperties.PLACEHOLDER_TEXT, "Go to line");
+        gotoField.addActionListener(e -> goToTyped());
+        JPanel bar = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 5));
+        bar.add(gotoField);
+        bar.add(position);
+
+        add(bar, BorderLayout.NORTH);
+        add(view, BorderLayout.CENTER);
+        add(scrollBar, BorderLayout.EAST);
+
+        bind(KeyEvent.VK_G, InputEvent.CTRL_DOWN_MASK, () -> {
+            gotoField.requestFocusInWindow();
+            gotoField.selectAll();
+        });
+        bind(KeyEvent.VK_PAGE_DOWN, 0, () -> scrollTo(top + rows() - 1));
+        bind(KeyEvent.VK_PAGE_UP, 0, () -> scrollTo(top - rows() + 1));
+        bind(KeyEvent.VK_HOME, InputEvent.CTRL_DOWN_MASK, () -> scrollTo(0));
+        bind(KeyEvent.VK_END, InputEvent.CTRL_DOWN_MASK, () -> scrollTo(lineCount));
+        view.registerKeyboardAction(e -> scrollTo(top + 1), KeyStroke.getKeyStroke(KeyEvent.VK_DOWN, 0),
+                JComponent.WHEN_FOCUSED);
+        view.registerKeyboardAction(e -> scrollTo(top - 1), KeyStroke.getKeyStroke(KeyEvent.VK_UP, 0),
+                JComponent.WHEN_FOCUSED);
+    }
+
+    private void bind(int key, int modifiers, Runnable action) {
+        registerKeyboardAction(e -> action.run(), KeyStroke.getKeyStroke(key, modifiers),
+                JComponent.WHEN_IN_FOCUSED_WINDOW);
+    }
+
+    /** Lines in the file, as counted by the index. */
+    long lineCount() {
+        return lineCount;
+    }
+
+    void focusGoto() {
+        gotoField.requestFocusInWindow();
+    }
+
+    // ------------------- Navigation -------------------
+    /** Shows 1-based {@code line} a third of the way down and marks it. */
+    void goTo(long line) {
+        marked = Math.max(0, Math.min(lineCount - 1, line - 1));
+        scrollTo(marked - rows() / 3);
+    }
+
+    private void goToTyped() {
+        String digits = gotoField.getText().replaceAll("[\\s,._']", "");
+        try {
+            long line = Long.parseLong(digits);
+            if (line < 1 || line > lineCount) throw new NumberFormatException();
+            gotoField.putClientProperty(FlatClientProperties.OUTLINE, null);
+            goTo(line);
+            view.requestFocusInWindow();
+        } catch (NumberFormatException e) {
+            gotoField.putClientProperty(FlatClientProperties.OUTLINE, FlatClientProperties.OUTLINE_ERROR);
+            Toolkit.getDefaultToolkit().beep();
+        }
+    }
+
+    /** Makes {@code line} the first visible one, as far as the end of the file allows. */
+    private void scrollTo(long line) {
+        int rows = rows();
+        long last = Math.max(0, lineCount - rows);
+        top = Math.max(0, Math.min(last, line));
+        int extent = (int) Math.max(1, rows / scale);
+        syncing = true;
+        scrollBar.setValues((int) (top / scale), extent, 0, (int) (last / scale) + extent);
+        scrollBar.setUnitIncrement(1);
+        scrollBar.setBlockIncrement(extent);
+        syncing = false;
+        position.setText(String.format("Lines %,d–%,d of %,d  ·  %s", top + 1, Math.min(lineCount, top + rows),
+                lineCount, charset.name()));
+        view.repaint();
+    }
+
+    private int rows() {
+        int rowHeight = view.getFontMetrics(view.getFont()).getHeight();
+        return Math.max(1, view.getHeight() / rowHeight);
+    }
+
+    @Override
+    public void close() throws IOException {
+        lines.close();
+    }
+
+    // ------------------- Rendering -------------------
+    /** Paints the visible lines with their numbers in a gutter; nothing else of the file is read. */
+    private final class View extends JComponent {
+        @Override
+        protected void paintComponent(Graphics g) {
+            Graphics2D g2 = (Graphics2D) g;
+            g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g2.setColor(UIManager.getColor("TextArea.background"));
+            g2.fillRect(0, 0, getWidth(), getHeight());
+            FontMetrics fm = g2.getFontMetrics(getFont());
+            int rowHeight = fm.getHeight();
+            int rows = getHeight() / rowHeight + 1; // and the partly visible one below
+            int gutter = fm.stringWidth(String.format("%,d", Math.min(lineCount, top + rows))) + 2 * GUTTER_PAD;
+            g2.setColor(UIManager.getColor("Panel.background"));
+            g2.fillRect(0, 0, gutter, getHeight());
+
+            Color text = UIManager.getColor("TextArea.foreground");
+            Color number = UIManager.getColor("Label.disabledForeground");
+            try {
+                long offset = lines.seek(top);
+                for (int r = 0; r < rows && top + r < lineCount; r++) {
+                    long line = top + r;
+                    int y = r * rowHeight;
+                    if (line == marked) {
+                        g2.setColor(UIManager.getColor("TextArea.selectionBackground"));
+                        g2.fillRect(gutter, y, getWidth() - gutter, rowHeight);
+                    }
+                    String label = String.format("%,d", line + 1);
+                    g2.setColor(number);
+                    g2.drawString(label, gutter - GUTTER_PAD - fm.stringWidth(label), y + fm.getAscent());
+                    offset = lines.read(offset);
+                    g2.setColor(text);
+                    g2.drawString(lines.text(charset), gutter + GUTTER_PAD, y + fm.getAscent());
+                }
+            } catch (IOException e) {
+                g2.setColor(text);
+                g2.drawString("Cannot read the file: " + e.getMessage(), gutter + GUTTER_PAD, fm.getAscent());
+            }
+        }
+    }
+
+    // ------------------- File Access -------------------
+    /**
+     * The file's lines through a memory-mapped window; on the event dispatch
+     * thread only. Finding a line starts at its checkpoint in the index, or at
+     * the last line found if that is between the checkpoint and the line.
+     */
+    static final class Lines implements Closeable {
+        static final int WINDOW = 16 * 1024 * 1024;
+
+        private final FileChannel channel;
+        private final LineIndex index;
+        private final long size;
+        private MappedByteBuffer window;
+        private long windowStart;
+        private long anchorLine;   // the last line found, and where it starts
+        private long anchorOffset;
+        private final byte[] text = new byte[MAX_LINE_BYTES];
+        private int textLength;
+        private boolean cut;       // the last line read was longer than MAX_LINE_BYTES
+
+        Lines(Path file, LineIndex index) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            this.index = index;
+            this.size = channel.size();
+            this.anchorOffset = index.offsetAt(-1);
+        }
+
+        /** File offset at which 0-based {@code line} starts; the end of the file past the last line. */
+        long seek(long line) throws IOException {
+            int checkpoint = index.floor(line);
+            long at = index.lineAt(checkpoint);
+            long offset = index.offsetAt(checkpoint);
+            if (anchorLine <= line && anchorLine > at) {
+                at = anchorLine;
+                offset = anchorOffset;
+            }
+            for (; at < line && offset < size; at++) offset = skip(offset);
+            anchorLine = at;
+            anchorOffset = offset;
+            return offset;
+        }
+
+        /** Reads the line starting at {@code offset}, kept for {@link #text}; returns where the next one starts. */
+        long read(long offset) throws IOException {
+            return scan(offset, true);
+        }
+
+        private long skip(long offset) throws IOException {
+            return scan(offset, false);
+        }
+
+        /** The last line read, decoded, without its line break. */
+        String text(Charset charset) {
+            String s = new String(text, 0, textLength, charset).replace("\t", "    ");
+            return cut ? s + " …" : s;
+        }
+
+        private long scan(long offset, boolean keep) throws IOException {
+            int kept = 0;
+            boolean more = false;
+            long p = offset;
+            while (p < size) {
+                MappedByteBuffer w = window(p);
+                int end = w.limit();
+                for (int i = (int) (p - windowStart); i < end; i++) {
+                    byte b = w.get(i);
+                    if (b == '\n' || b == '\r') {
+                        long next = windowStart + i + 1;
+                        if (b == '\r' && next < size && byteAt(next) == '\n') next++;
+                        textLength = kept;
+                        cut = more;
+                        return next;
+                    }
+                    if (!keep) continue;
+                    if (kept < text.length) text[kept++] = b;
+                    else more = true;
+                }
+                p = windowStart + end;
+            }
+            textLength = kept;
+            cut = more;
+            return size;
+        }
+
+        private byte byteAt(long p) throws IOException {
+            return window(p).get((int) (p - windowStart));
+        }
+
+        /** Maps the aligned window holding {@code p}; the previous one is released for the collector to unmap. */
+        private MappedByteBuffer window(long p) throws IOException {
+            if (window == null || p < windowStart || p >= windowStart + window.limit()) {
+                windowStart = p / WINDOW * WINDOW;
+                window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(WINDOW, size - windowStart));
+            }
+            return window;
+        }
+
+        @Override
+        public void close() throws IOException {
+            window = null;
+            channel.close();
+        }
+    }
+}
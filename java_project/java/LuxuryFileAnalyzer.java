@@ -4,26 +4,61 @@ import com.formdev.flatlaf.FlatClientProperties;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
+import javax.swing.table.TableColumn;
 import java.awt.*;
 import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.StringSelection;
 import java.awt.dnd.*;
 import java.awt.event.*;
 import java.awt.geom.*;
+import java.awt.image.VolatileImage;
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.util.Arrays;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Comparator;
+import java.util.concurrent.ExecutionException;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Random;
 
 public class LuxuryFileAnalyzer extends JFrame {
 
     private JLabel fileLabel, wordsLabel, charsLabel, linesLabel, sizeLabel;
-    private JButton themeButton;
+    private JButton themeButton, cancelButton, previewButton;
+    private JToggleButton liveButton, statsButton, estimateButton;
     private AnimatedDropZone dropZone;
     private AnimatedBackground backgroundPanel;
+    private JPanel centerPanel;
     private boolean darkMode = false;
+    private boolean themePending;    // the other theme was asked for while an analysis ran
+    private final FileAnalysisEngine engine = new FileAnalysisEngine();
+    private final Object cacheLock = new Object();
+    private AnalysisCache cache;                 // read from disk on first use, see cache()
+    private DirectoryAnalyzer directoryAnalyzer; // shares the cache, so built with it
+    private final FileEstimator estimator = new FileEstimator(engine, FileEstimator.DEFAULT_BLOCKS,
+            FileEstimator.DEFAULT_BLOCK_SIZE, new Random());
+    private final ArchiveAnalyzer archiveAnalyzer = new ArchiveAnalyzer(engine);
+    private JTextArea breakdownArea;
+    private JScrollPane breakdownScroll;
+    private JTable resultTable;
+    private JScrollPane resultScroll;
+    private final Timer resultFlush = new Timer(100, e -> flushResults());
+    private AnalysisWorker currentWorker;
+    private final AnimationScheduler scheduler = new AnimationScheduler();
+    private AnimationScheduler.Transition statsTransition;
+    private FileTailer tailer;
+    private final AnalysisMetrics metrics = AnalysisMetrics.global();
+    private JDialog diagnostics;
+    private JDialog preview;
+    private LinePreview previewPane;
+    private Path previewFile; // the last single text file analysed
+    private Path previewOf;   // the file in the preview window
+    private File probeFile; // --startup-probe: analysed after the first frame, then the app exits
 
     private final Color PRIMARY = new Color(0, 122, 255);
 
@@ -52,7 +87,51 @@ public class LuxuryFileAnalyzer extends JFrame {
         themeButton = new JButton("☀ Light");
         themeButton.putClientProperty(FlatClientProperties.BUTTON_TYPE, "roundRect");
         themeButton.addActionListener(this::toggleTheme);
-        topBar.add(themeButton, BorderLayout.EAST);
+
+        cancelButton = new JButton("✕ Cancel");
+        cancelButton.putClientProperty(FlatClientProperties.BUTTON_TYPE, "roundRect");
+        cancelButton.addActionListener(this::cancelAnalysis);
+        cancelButton.setVisible(false);
+
+        previewButton = new JButton("📜 Preview");
+        previewButton.putClientProperty(FlatClientProperties.BUTTON_TYPE, "roundRect");
+        previewButton.setToolTipText("Open the analysed file at any line (Ctrl+G)");
+        previewButton.addActionListener(e -> openPreview());
+        previewButton.setVisible(false);
+
+        liveButton = new JToggleButton("◉ Live");
+        liveButton.putClientProperty(FlatClientProperties.BUTTON_TYPE, "roundRect");
+        liveButton.setToolTipText("Keep watching the next analysed file and count appended data");
+        liveButton.addActionListener(e -> {
+            if (!liveButton.isSelected()) stopTailing();
+        });
+
+        statsButton = new JToggleButton("📊 Stats");
+        statsButton.putClientProperty(FlatClientProperties.BUTTON_TYPE, "roundRect");
+        statsButton.setToolTipText("Also show top words, line lengths and byte entropy for the next analysed file");
+
+        estimateButton = new JToggleButton("≈ Estimate");
+        estimateButton.putClientProperty(FlatClientProperties.BUTTON_TYPE, "roundRect");
+        estimateButton.setToolTipText("Show a sampled estimate of large files at once, then refine it to the exact count");
+
+        JPanel actions = new JPanel(new FlowLayout(FlowLayout.RIGHT, 10, 0));
+        actions.setOpaque(false);
+        actions.add(cancelButton);
+        actions.add(previewButton);
+        actions.add(estimateButton);
+        actions.add(statsButton);
+        actions.add(liveButton);
+        actions.add(themeButton);
+        topBar.add(actions, BorderLayout.EAST);
+
+        getRootPane().registerKeyboardAction(this::cancelAnalysis,
+                KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0), JComponent.WHEN_IN_FOCUSED_WINDOW);
+        getRootPane().registerKeyboardAction(e -> backgroundPanel.toggleFrameStats(),
+                KeyStroke.getKeyStroke(KeyEvent.VK_F3, 0), JComponent.WHEN_IN_FOCUSED_WINDOW);
+        getRootPane().registerKeyboardAction(e -> toggleDiagnostics(),
+                KeyStroke.getKeyStroke(KeyEvent.VK_F2, 0), JComponent.WHEN_IN_FOCUSED_WINDOW);
+        getRootPane().registerKeyboardAction(e -> openPreview(),
+                KeyStroke.getKeyStroke(KeyEvent.VK_G, InputEvent.CTRL_DOWN_MASK), JComponent.WHEN_IN_FOCUSED_WINDOW);
 
         // ------------------- Animated Drop Zone -------------------
         dropZone = new AnimatedDropZone();
@@ -80,12 +159,11 @@ public class LuxuryFileAnalyzer extends JFrame {
                     List<File> droppedFiles = (List<File>) e.getTransferable()
                             .getTransferData(DataFlavor.javaFileListFlavor);
                     if (!droppedFiles.isEmpty()) {
-                        File file = droppedFiles.get(0);
-                        processFile(file);
+                        processFiles(droppedFiles);
                     }
                     e.dropComplete(true);
                 } catch (Exception ex) {
-                    ex.printStackTrace();
+                    metrics.problem("dropping files", ex);
                     e.dropComplete(false);
                 }
             }
@@ -110,7 +188,7 @@ public class LuxuryFileAnalyzer extends JFrame {
         statsPanel.add(createCard("📊 File Size", sizeLabel));
 
         // ------------------- Center Panel -------------------
-        JPanel centerPanel = new JPanel();
+        centerPanel = new JPanel();
         centerPanel.setLayout(new BoxLayout(centerPanel, BoxLayout.Y_AXIS));
         centerPanel.setBorder(new EmptyBorder(30, 50, 30, 50));
         centerPanel.setOpaque(false);
@@ -125,35 +203,132 @@ public class LuxuryFileAnalyzer extends JFrame {
         centerPanel.add(Box.createRigidArea(new Dimension(0, 20)));
         centerPanel.add(statsPanel);
 
+        // The breakdown text and the result table go below, built when first needed
+        centerPanel.add(Box.createRigidArea(new Dimension(0, 20)));
+
         backgroundPanel.add(topBar, BorderLayout.NORTH);
         backgroundPanel.add(centerPanel, BorderLayout.CENTER);
 
         getContentPane().setLayout(new BorderLayout());
         getContentPane().add(backgroundPanel, BorderLayout.CENTER);
+
+        scheduler.attachTo(this);
+    }
+
+    // ------------------- Startup -------------------
+    /** Runs once the window has painted: starts what the first frame did not need. */
+    private void firstFrame() {
+        metrics.milestone("first frame");
+        // JMX loads some 200 ms of classes, and nothing reads it this early
+        Thread jmx = new Thread(AnalysisMetrics::registerMBean, "lfa-jmx");
+        jmx.setDaemon(true);
+        jmx.start();
+        // Reading the cache index is file I/O, so it is loaded here rather than with the frame
+        Thread cacheLoader = new Thread(this::cache, "lfa-cache");
+        cacheLoader.setDaemon(true);
+        cacheLoader.start();
+        if (probeFile != null) processFile(probeFile);
+    }
+
+    /** The analysis cache, loaded by the first caller; it reads a file, so never call it on the EDT. */
+    private AnalysisCache cache() {
+        synchronized (cacheLock) {
+            if (cache == null) {
+                cache = new AnalysisCache();
+                metrics.watch(cache);
+            }
+            return cache;
+        }
+    }
+
+    private DirectoryAnalyzer directoryAnalyzer() {
+        synchronized (cacheLock) {
+            if (directoryAnalyzer == null) {
+                directoryAnalyzer = new DirectoryAnalyzer(engine, DirectoryAnalyzer.DEFAULT_IO_CONCURRENCY, cache());
+            }
+            return directoryAnalyzer;
+        }
+    }
+
+    /** Ends a --startup-probe run: prints the milestones as JSON and exits. */
+    private static void finishProbe(boolean ok) {
+        System.out.println(FileAnalyzerCli.Json.value(AnalysisMetrics.global().milestones()));
+        System.exit(ok ? 0 : 1);
+    }
+
+    /**
+     * Without a display the probe still loads the look and feel and runs the
+     * first analysis, e.g. to record a class-data archive on a build server.
+     */
+    private static void headlessProbe(Path file) {
+        AnalysisMetrics metrics = AnalysisMetrics.global();
+        System.err.println("No display: probing the look and feel and the first analysis only");
+        try {
+            new FileAnalysisEngine().analyze(file, FileAnalysisEngine.Mode.AUTO, AnalysisMonitor.NONE);
+            metrics.milestone("first result");
+            finishProbe(true);
+        } catch (IOException | RuntimeException e) {
+            metrics.problem("startup probe", e);
+            System.err.println("Startup probe failed: " + e.getMessage());
+            finishProbe(false);
+        }
     }
 
     // ------------------- Animated Background Component -------------------
     class AnimatedBackground extends JPanel {
-        private List<Particle> particles;
-        private Timer animationTimer;
+        private static final int PARTICLE_COUNT = 50;
+        private static final float LINK_DISTANCE = 100f;
+        private static final float LINK_DISTANCE_SQ = LINK_DISTANCE * LINK_DISTANCE;
+        private static final int ALPHA_LEVELS = 32;
+
+        private final Particle[] particles = new Particle[PARTICLE_COUNT];
+        private int particleCount;
         private float waveOffset = 0;
 
+        // Paint resources are built once; nothing is allocated while painting a frame
+        private final Random random = new Random();
+        private final Color particleColor = new Color(100, 200, 255);
+        private final Color[] waveColors = {
+            new Color(0, 150, 200, 40), new Color(0, 150, 200, 30), new Color(0, 150, 200, 20)
+        };
+        private final AlphaComposite waveComposite = AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.15f);
+        private final AlphaComposite[] linkComposites = new AlphaComposite[ALPHA_LEVELS + 1];
+        private final BasicStroke linkStroke = new BasicStroke(1);
+        private final Font overlayFont = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+        private final Path2D.Float[] waves = { new Path2D.Float(), new Path2D.Float(), new Path2D.Float() };
+        private final Ellipse2D.Float dot = new Ellipse2D.Float();
+        private final Line2D.Float link = new Line2D.Float();
+        private VolatileImage staticLayer;
+
+        // Spatial grid (cell = link distance) so only neighbouring cells are compared
+        private int[] cellHead = new int[0];
+        private final int[] nextInCell = new int[PARTICLE_COUNT];
+        private final int[] cellX = new int[PARTICLE_COUNT];
+        private final int[] cellY = new int[PARTICLE_COUNT];
+
+        // Frame-time metric, shown with F3 or -Dlfa.frameStats=true
+        private boolean showFrameStats = Boolean.getBoolean("lfa.frameStats");
+        private double avgFrameNanos;
+        private long frames;
+        private String frameStatsText = "";
+
         class Particle {
             float x, y, size, speedX, speedY, opacity;
+            final AlphaComposite composite;
             
             Particle(int w, int h) {
-                Random rand = new Random();
-                x = rand.nextInt(w);
-                y = rand.nextInt(h);
-                size = 2 + rand.nextFloat() * 4;
-                speedX = -0.5f + rand.nextFloat() * 1;
-                speedY = -0.5f + rand.nextFloat() * 1;
-                opacity = 0.3f + rand.nextFloat() * 0.4f;
+                x = random.nextInt(w);
+                y = random.nextInt(h);
+                size = 2 + random.nextFloat() * 4;
+                speedX = -0.5f + random.nextFloat() * 1;
+                speedY = -0.5f + random.nextFloat() * 1;
+                opacity = 0.3f + random.nextFloat() * 0.4f;
+                composite = AlphaComposite.getInstance(AlphaComposite.SRC_OVER, opacity);
             }
             
-            void update(int w, int h) {
-                x += speedX;
-                y += speedY;
+            void update(int w, int h, float frames) {
+                x += speedX * frames;
+                y += speedY * frames;
                 
                 if (x < 0) x = w;
                 if (x > w) x = 0;
@@ -163,52 +338,59 @@ public class LuxuryFileAnalyzer extends JFrame {
         }
 
         public AnimatedBackground() {
-            particles = new ArrayList<>();
+            // Each pair used to be drawn twice; draw it once at the alpha the two strokes produced
+            for (int i = 0; i <= ALPHA_LEVELS; i++) {
+                float alpha = (float) i / ALPHA_LEVELS * 0.3f;
+                linkComposites[i] = AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 1 - (1 - alpha) * (1 - alpha));
+            }
             
-            // Create particles after component is displayed
-            SwingUtilities.invokeLater(() -> {
+            scheduler.addAmbient(this, frames -> {
+                waveOffset += 0.05f * frames;
                 int w = getWidth();
                 int h = getHeight();
-                if (w > 0 && h > 0) {
-                    for (int i = 0; i < 50; i++) {
-                        particles.add(new Particle(w, h));
+                // Particles are created on the first tick, after the window has shown its first frame
+                if (particleCount == 0 && w > 0 && h > 0) {
+                    for (int i = 0; i < PARTICLE_COUNT; i++) {
+                        particles[i] = new Particle(w, h);
                     }
+                    particleCount = PARTICLE_COUNT;
                 }
-            });
-            
-            animationTimer = new Timer(50, e -> {
-                waveOffset += 0.05f;
-                for (Particle p : particles) {
-                    p.update(getWidth(), getHeight());
+                for (int i = 0; i < particleCount; i++) {
+                    particles[i].update(w, h, frames);
                 }
+                // Particles spread over the whole panel, so the dirty region would be all of it anyway
                 repaint();
             });
-            animationTimer.start();
+        }
+
+        public void toggleFrameStats() {
+            showFrameStats = !showFrameStats;
+            repaint();
+        }
+
+        public double averageFrameMillis() {
+            return avgFrameNanos / 1e6;
         }
 
         @Override
         protected void paintComponent(Graphics g) {
-            super.paintComponent(g);
+            long start = System.nanoTime();
             Graphics2D g2 = (Graphics2D) g.create();
             g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 
             int w = getWidth();
             int h = getHeight();
 
-            // Dark gradient background
-            GradientPaint bgGradient = new GradientPaint(
-                0, 0, new Color(15, 32, 39),
-                w, h, new Color(32, 58, 67)
-            );
-            g2.setPaint(bgGradient);
-            g2.fillRect(0, 0, w, h);
+            // Gradient and caption never change between frames
+            paintStaticLayer(g2, w, h);
 
             // Animated wave effect
-            g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.15f));
+            g2.setComposite(waveComposite);
             
             // Multiple wave layers
             for (int layer = 0; layer < 3; layer++) {
-                Path2D wave = new Path2D.Float();
+                Path2D.Float wave = waves[layer];
+                wave.reset();
                 wave.moveTo(0, h);
                 
                 float amplitude = 40 + layer * 15;
@@ -224,32 +406,60 @@ public class LuxuryFileAnalyzer extends JFrame {
                 wave.lineTo(w, h);
                 wave.closePath();
                 
-                Color waveColor = new Color(0, 150, 200, 40 - layer * 10);
-                g2.setColor(waveColor);
+                g2.setColor(waveColors[layer]);
                 g2.fill(wave);
             }
 
-            // Draw particles
-            g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 1.0f));
-            for (Particle p : particles) {
-                g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, p.opacity));
-                g2.setColor(new Color(100, 200, 255));
-                g2.fill(new Ellipse2D.Float(p.x, p.y, p.size, p.size));
-                
-                // Connect nearby particles with lines
-                for (Particle other : particles) {
-                    float dist = (float) Math.sqrt(Math.pow(p.x - other.x, 2) + Math.pow(p.y - other.y, 2));
-                    if (dist < 100 && dist > 0) {
-                        float alpha = (100 - dist) / 100 * 0.3f;
-                        g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, alpha));
-                        g2.setStroke(new BasicStroke(1));
-                        g2.setColor(new Color(100, 200, 255));
-                        g2.draw(new Line2D.Float(p.x, p.y, other.x, other.y));
+            // Connect nearby particles with lines, then draw the particles on top
+            g2.setColor(particleColor);
+            paintLinks(g2, w, h);
+            for (int i = 0; i < particleCount; i++) {
+                Particle p = particles[i];
+                g2.setComposite(p.composite);
+                dot.setFrame(p.x, p.y, p.size, p.size);
+                g2.fill(dot);
+            }
+
+            long elapsed = System.nanoTime() - start;
+            avgFrameNanos = frames++ == 0 ? elapsed : avgFrameNanos * 0.9 + elapsed * 0.1;
+            if (showFrameStats) paintFrameStats(g2);
+
+            g2.dispose();
+            if (frames == 1) SwingUtilities.invokeLater(LuxuryFileAnalyzer.this::firstFrame);
+        }
+
+        private void paintStaticLayer(Graphics2D g2, int w, int h) {
+            if (w <= 0 || h <= 0) return;
+            GraphicsConfiguration gc = getGraphicsConfiguration();
+            do {
+                int status = staticLayer == null ? VolatileImage.IMAGE_INCOMPATIBLE : staticLayer.validate(gc);
+                if (status == VolatileImage.IMAGE_INCOMPATIBLE
+                        || staticLayer.getWidth() != w || staticLayer.getHeight() != h) {
+                    if (staticLayer != null) staticLayer.flush();
+                    staticLayer = createVolatileImage(w, h);
+                    if (staticLayer == null) { // not displayable yet
+                        renderStaticLayer(g2, w, h);
+                        return;
                     }
+                    status = VolatileImage.IMAGE_RESTORED;
                 }
-            }
+                if (status == VolatileImage.IMAGE_RESTORED) {
+                    Graphics2D ig = staticLayer.createGraphics();
+                    ig.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                    renderStaticLayer(ig, w, h);
+                    ig.dispose();
+                }
+                g2.drawImage(staticLayer, 0, 0, null);
+            } while (staticLayer.contentsLost());
+        }
+
+        private void renderStaticLayer(Graphics2D g2, int w, int h) {
+            // Dark gradient background
+            g2.setPaint(new GradientPaint(0, 0, new Color(15, 32, 39), w, h, new Color(32, 58, 67)));
+            g2.fillRect(0, 0, w, h);
 
             // Bottom text effect
+            Composite old = g2.getComposite();
             g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.6f));
             g2.setFont(new Font("SF Pro Display", Font.BOLD, 60));
             g2.setColor(new Color(255, 255, 255, 30));
@@ -257,8 +467,68 @@ public class LuxuryFileAnalyzer extends JFrame {
             FontMetrics fm = g2.getFontMetrics();
             int textWidth = fm.stringWidth(text);
             g2.drawString(text, (w - textWidth) / 2, h - 50);
+            g2.setComposite(old);
+        }
 
-            g2.dispose();
+        private void paintLinks(Graphics2D g2, int w, int h) {
+            int cols = Math.max(1, (int) Math.ceil(w / LINK_DISTANCE));
+            int rows = Math.max(1, (int) Math.ceil(h / LINK_DISTANCE));
+            if (cellHead.length < cols * rows) cellHead = new int[cols * rows]; // only on resize
+            Arrays.fill(cellHead, 0, cols * rows, -1);
+            for (int i = 0; i < particleCount; i++) {
+                int cx = Math.min(cols - 1, Math.max(0, (int) (particles[i].x / LINK_DISTANCE)));
+                int cy = Math.min(rows - 1, Math.max(0, (int) (particles[i].y / LINK_DISTANCE)));
+                cellX[i] = cx;
+                cellY[i] = cy;
+                int cell = cy * cols + cx;
+                nextInCell[i] = cellHead[cell];
+                cellHead[cell] = i;
+            }
+
+            g2.setStroke(linkStroke);
+            for (int i = 0; i < particleCount; i++) {
+                int cx = cellX[i];
+                int cy = cellY[i];
+                // Same cell: only the particles after i in the cell list, so each pair is seen once
+                for (int j = nextInCell[i]; j >= 0; j = nextInCell[j]) {
+                    linkPair(g2, i, j);
+                }
+                // Forward half of the neighbourhood; the other half is covered from the other side
+                linkCell(g2, i, cx + 1, cy, cols, rows);
+                linkCell(g2, i, cx - 1, cy + 1, cols, rows);
+                linkCell(g2, i, cx, cy + 1, cols, rows);
+                linkCell(g2, i, cx + 1, cy + 1, cols, rows);
+            }
+        }
+
+        private void linkCell(Graphics2D g2, int i, int cx, int cy, int cols, int rows) {
+            if (cx < 0 || cx >= cols || cy >= rows) return;
+            for (int j = cellHead[cy * cols + cx]; j >= 0; j = nextInCell[j]) {
+                linkPair(g2, i, j);
+            }
+        }
+
+        private void linkPair(Graphics2D g2, int i, int j) {
+            Particle p = particles[i];
+            Particle other = particles[j];
+            float dx = p.x - other.x;
+            float dy = p.y - other.y;
+            float distSq = dx * dx + dy * dy;
+            if (distSq >= LINK_DISTANCE_SQ || distSq == 0) return;
+            float dist = (float) Math.sqrt(distSq);
+            g2.setComposite(linkComposites[(int) ((LINK_DISTANCE - dist) / LINK_DISTANCE * ALPHA_LEVELS)]);
+            link.setLine(p.x, p.y, other.x, other.y);
+            g2.draw(link);
+        }
+
+        private void paintFrameStats(Graphics2D g2) {
+            if (frames % 20 == 1) {
+                frameStatsText = String.format("frame %.2f ms · %d particles", averageFrameMillis(), particleCount);
+            }
+            g2.setComposite(AlphaComposite.SrcOver);
+            g2.setFont(overlayFont);
+            g2.setColor(Color.WHITE);
+            g2.drawString(frameStatsText, 10, getHeight() - 10);
         }
     }
 
@@ -266,19 +536,19 @@ public class LuxuryFileAnalyzer extends JFrame {
     class AnimatedDropZone extends JPanel {
         private boolean isDragging = false;
         private float dashOffset = 0;
-        private Timer animationTimer;
         private ActionListener browseListener;
 
         public AnimatedDropZone() {
             setOpaque(false);
             setCursor(new Cursor(Cursor.HAND_CURSOR));
             
-            animationTimer = new Timer(50, e -> {
-                dashOffset += 2;
+            // Only the dashed ring moves; repaint its bounds instead of the whole zone
+            scheduler.addAmbient(this, frames -> {
+                dashOffset += 2 * frames;
                 if (dashOffset > 20) dashOffset = 0;
-                repaint();
+                int size = Math.min(getWidth(), getHeight()) - 40;
+                repaint((getWidth() - size) / 2 - 12, (getHeight() - size) / 2 - 12, size + 24, size + 24);
             });
-            animationTimer.start();
 
             addMouseListener(new MouseAdapter() {
                 @Override
@@ -410,97 +680,670 @@ public class LuxuryFileAnalyzer extends JFrame {
     // ------------------- File Choosing -------------------
     private void chooseFile(ActionEvent e) {
         JFileChooser chooser = new JFileChooser();
+        chooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
+        chooser.setMultiSelectionEnabled(true);
         if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
-            processFile(chooser.getSelectedFile());
+            processFiles(Arrays.asList(chooser.getSelectedFiles()));
         }
     }
 
     private void processFile(File file) {
-        fileLabel.setText("📄 " + file.getName());
-        animateStatsUpdate(file);
+        processFiles(Collections.singletonList(file));
+    }
+
+    private void processFiles(List<File> files) {
+        // A new drop supersedes whatever is still being analysed
+        if (currentWorker != null) currentWorker.cancel(false);
+        stopTailing();
+        currentWorker = new AnalysisWorker(files, liveButton.isSelected(), statsButton.isSelected(),
+                estimateButton.isSelected());
+        fileLabel.setText(currentWorker.displayName());
+        if (breakdownScroll != null) breakdownScroll.setVisible(false);
+        if (currentWorker.rows != null) {
+            showResults(currentWorker.rows);
+            resultFlush.restart();
+        } else if (resultTable != null) {
+            resultFlush.stop();
+            resultScroll.setVisible(false);
+            resultTable.setModel(new ResultTableModel()); // lets the previous folder's rows go
+        }
+        cancelButton.setVisible(true);
+        currentWorker.execute();
+    }
+
+    /**
+     * Stops the running analysis. The passes poll {@code isCancelled()}, so the
+     * worker is not interrupted: that would close the channel the cache is
+     * saved through on the way out.
+     */
+    private void cancelAnalysis(ActionEvent e) {
+        if (currentWorker != null) currentWorker.cancel(false);
+    }
+
+    // ------------------- Folder Breakdown -------------------
+    /** The text area under the cards for statistics and archive entries, built on first use. */
+    private JTextArea breakdown() {
+        if (breakdownArea == null) {
+            breakdownArea = new JTextArea(8, 60);
+            breakdownArea.setEditable(false);
+            breakdownArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 13));
+            breakdownScroll = new JScrollPane(breakdownArea);
+            centerPanel.add(breakdownScroll);
+        }
+        return breakdownArea;
+    }
+
+    private void showBreakdownText(String text) {
+        breakdown().setText(text);
+        breakdownArea.setCaretPosition(0);
+        breakdownScroll.setVisible(true);
+        breakdownScroll.revalidate();
+    }
+
+    // ------------------- Multi-file Results -------------------
+    /** The result table, built for the first folder analysis. */
+    private JTable resultTable() {
+        if (resultTable == null) {
+            resultTable = new JTable(new ResultTableModel());
+            resultTable.setFillsViewportHeight(true);
+            resultTable.setPreferredScrollableViewportSize(new Dimension(760, 200));
+            resultTable.getTableHeader().setReorderingAllowed(false);
+            resultTable.getTableHeader().addMouseListener(new MouseAdapter() {
+                @Override
+                public void mouseClicked(MouseEvent e) {
+                    int column = resultTable.getTableHeader().columnAtPoint(e.getPoint());
+                    if (column >= 0) sortResults(resultTable.convertColumnIndexToModel(column));
+                }
+            });
+            resultScroll = new JScrollPane(resultTable);
+            centerPanel.add(resultScroll);
+        }
+        return resultTable;
+    }
+
+    /** Shows {@code rows} in the result table; rows are added as the analysis goes on. */
+    private void showResults(ResultTableModel rows) {
+        resultTable().setModel(rows);
+        resultTable.getColumnModel().getColumn(ResultTableModel.NAME).setPreferredWidth(320);
+        resultScroll.setVisible(true);
+        resultScroll.revalidate();
+    }
+
+    private void sortResults(int column) {
+        ResultTableModel rows = (ResultTableModel) resultTable.getModel();
+        rows.sortBy(column);
+        for (int i = 0; i < resultTable.getColumnCount(); i++) {
+            TableColumn c = resultTable.getColumnModel().getColumn(i);
+            c.setHeaderValue(rows.getColumnName(c.getModelIndex()));
+        }
+        resultTable.getTableHeader().repaint();
+    }
+
+    // Batches the rows that arrived since the last tick into one table event, however many files finished
+    private void flushResults() {
+        if (currentWorker != null) currentWorker.flushRows();
+    }
+
+    // ------------------- Live (Tail) Mode -------------------
+    private void startTailing(FileTailer newTailer, String name) {
+        tailer = newTailer;
+        fileLabel.setText(name + "  ·  live");
+    }
+
+    private void stopTailing() {
+        if (tailer != null) {
+            tailer.close();
+            tailer = null;
+        }
+    }
+
+    private FileTailer.Listener liveListener(String name) {
+        return new FileTailer.Listener() {
+            @Override
+            public void updated(AnalysisResult result, boolean rescanned) {
+                SwingUtilities.invokeLater(() -> {
+                    if (tailer == null) return;
+                    scheduler.stop(statsTransition);
+                    wordsLabel.setText(result.words() + "");
+                    charsLabel.setText(result.chars() + "");
+                    linesLabel.setText(result.lines() + "");
+                    sizeLabel.setText(result.sizeKB() + " KB");
+                    fileLabel.setText(name + "  ·  live" + (rescanned ? " (rescanned)" : "") + encodingNote(result));
+                });
+            }
+
+            @Override
+            public void failed(IOException error) {
+                metrics.problem("live update of " + name, error);
+            }
+        };
+    }
+
+    /** Names the encoding unless it is UTF-8, and any malformed sequences. */
+    private static String encodingNote(AnalysisResult result) {
+        String encoding = result.encoding();
+        String note = encoding == null || encoding.equals("UTF-8") ? "" : "  ·  " + encoding;
+        if (result.malformed() > 0) note += "  ·  " + result.malformed() + " malformed";
+        return note;
+    }
+
+    // ------------------- Background Analysis -------------------
+    class AnalysisWorker extends SwingWorker<AnalysisResult, Long>
+            implements AnalysisMonitor, DirectoryAnalyzer.Listener {
+        private static final int TOP_ENTRIES = 50;
+        // below this the exact pass takes about as long as sampling
+        private static final long ESTIMATE_THRESHOLD = FileAnalysisEngine.DEFAULT_PARALLEL_THRESHOLD;
+        // from this size the counting pass also builds the line index (of byte-counted text), so the
+        // preview opens at once
+        private static final long INDEX_THRESHOLD = FileAnalysisEngine.DEFAULT_PARALLEL_THRESHOLD;
+
+        private final List<File> files;
+        private final boolean folderMode;
+        private final boolean live;
+        private final List<StatisticsCollector> statistics;
+        private final boolean estimateFirst;
+        private volatile AnalysisEstimate estimate; // shown on the cards until the exact pass finishes
+        private FileTailer liveTailer;
+        private final long startNanos = System.nanoTime();
+        private volatile long totalBytes;
+        final ResultTableModel rows; // every file of a folder analysis, added from the walker threads
+        private final Path base;
+        private DirectoryAnalyzer.Summary summary;
+        private ArchiveResult archive;
+        private boolean fromCache;
+
+        AnalysisWorker(List<File> files, boolean live, boolean withStatistics, boolean estimateFirst) {
+            this.files = new ArrayList<>(files);
+            this.folderMode = files.size() > 1 || files.get(0).isDirectory();
+            this.live = live && !folderMode;
+            // statistics are per file and need a full pass, so not for folders or tailing
+            this.statistics = withStatistics && !folderMode && !this.live ? StatisticsCollector.standard() : null;
+            this.estimateFirst = estimateFirst;
+            this.rows = folderMode ? new ResultTableModel() : null;
+            if (rows != null) rows.sortBy(ResultTableModel.SIZE);
+            this.base = files.size() == 1 ? files.get(0).toPath() : null;
+        }
+
+        String displayName() {
+            if (files.size() > 1) return "📄 " + files.size() + " items";
+            return (folderMode ? "📁 " : "📄 ") + files.get(0).getName();
+        }
+
+        @Override
+        protected AnalysisResult doInBackground() throws Exception {
+            try {
+                return folderMode ? analyzeFolder() : analyzeFile(files.get(0).toPath());
+            } finally {
+                try {
+                    cache().save();
+                } catch (IOException ex) {
+                    metrics.problem("saving the analysis cache", ex);
+                }
+            }
+        }
+
+        private AnalysisResult analyzeFile(Path path) throws IOException {
+            ArchiveAnalyzer.Format format = ArchiveAnalyzer.detect(path);
+            if (format != null) {
+                // counted by its decompressed content; archives are neither tailed, cached nor sampled
+                archive = archiveAnalyzer.analyze(path, format, this);
+                return archive.total();
+            }
+            if (live) {
+                // A growing file is never a cache hit; the tailer keeps its own state
+                liveTailer = new FileTailer(path, liveListener(displayName()));
+                return liveTailer.start(this);
+            }
+            if (statistics == null) {
+                AnalysisResult cached = cache().get(path);
+                if (cached != null) {
+                    fromCache = true;
+                    return cached;
+                }
+            }
+            if (estimateFirst && Files.size(path) >= ESTIMATE_THRESHOLD) showEstimate(estimator.estimate(path));
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            List<StatisticsCollector> collectors = new ArrayList<>();
+            if (statistics != null) collectors.addAll(statistics);
+            LineIndex index = attrs.size() >= INDEX_THRESHOLD
+                    && TextEncoding.detect(path).kind() != TextEncoding.Kind.DECODED ? new LineIndex() : null;
+            if (index != null) collectors.add(index);
+            AnalysisResult result = engine.analyze(path, FileAnalysisEngine.Mode.AUTO, this, collectors);
+            cache().put(path, attrs, result);
+            if (index != null) cache().putLineIndex(path, attrs, index);
+            return result;
+        }
+
+        /** Puts the estimate on the cards, marked with ≈, while the exact pass goes on. */
+        private void showEstimate(AnalysisEstimate e) {
+            estimate = e;
+            SwingUtilities.invokeLater(() -> {
+                if (this != currentWorker || isDone()) return;
+                scheduler.stop(statsTransition);
+                AnalysisResult r = e.result();
+                wordsLabel.setText("≈" + r.words());
+                charsLabel.setText("≈" + r.chars());
+                linesLabel.setText("≈" + r.lines());
+                sizeLabel.setText(r.sizeKB() + " KB");
+                fileLabel.setText(displayName() + estimateNote());
+            });
+        }
+
+        private String estimateNote() {
+            AnalysisEstimate e = estimate;
+            return e == null ? "" : String.format("  ·  ≈ estimate ±%.1f%%", e.relativeError() * 100);
+        }
+
+        private AnalysisResult analyzeFolder() throws IOException {
+            List<Path> roots = new ArrayList<>();
+            for (File f : files) roots.add(f.toPath());
+            summary = directoryAnalyzer().analyze(roots, this, this);
+            return summary.total();
+        }
+
+        @Override
+        public void fileAnalyzed(Path file, AnalysisResult result) {
+            rows.add((base != null ? base.relativize(file) : file).toString(), result);
+        }
+
+        /** Moves the files counted since the last call into the table and their running totals onto the cards. */
+        void flushRows() {
+            if (rows == null || !rows.flush()) return;
+            scheduler.stop(statsTransition);
+            AnalysisResult total = rows.total();
+            wordsLabel.setText(total.words() + "");
+            charsLabel.setText(total.chars() + "");
+            linesLabel.setText(total.lines() + "");
+        }
+
+        @Override
+        public void fileFailed(Path file, IOException error) {
+            metrics.problem("analysing " + file, error);
+        }
+
+        // Called from the analysis threads; SwingWorker coalesces these into process()
+        @Override
+        public void progress(long bytesProcessed, long totalBytes) {
+            this.totalBytes = totalBytes;
+            publish(bytesProcessed);
+        }
+
+        @Override
+        protected void process(List<Long> chunks) {
+            if (this != currentWorker || isDone()) return;
+            long done = chunks.get(chunks.size() - 1);
+            double seconds = (System.nanoTime() - startNanos) / 1e9;
+            long mbPerSecond = seconds > 0 ? (long) (done / seconds / (1024 * 1024)) : 0;
+            String percent = totalBytes > 0 ? "  ·  " + done * 100 / totalBytes + "%" : "";
+            sizeLabel.setText(done / 1024 + " KB");
+            fileLabel.setText(displayName() + percent + "  ·  " + mbPerSecond + " MB/s" + estimateNote());
+        }
+
+        @Override
+        protected void done() {
+            if (this != currentWorker) { // superseded by a newer drop
+                if (liveTailer != null) liveTailer.close();
+                return;
+            }
+            resultFlush.stop();
+            flushRows(); // a cancelled or failed walk still shows the files it counted
+            currentWorker = null;
+            cancelButton.setVisible(false);
+            applyTheme();
+            if (isCancelled()) {
+                if (liveTailer != null) liveTailer.close();
+                // an estimate already on the cards stays there, still marked ≈
+                fileLabel.setText(displayName() + "  ·  cancelled" + estimateNote());
+                return;
+            }
+            fileLabel.setText(displayName());
+            try {
+                AnalysisResult result = get();
+                metrics.milestone("first result");
+                fileLabel.setText(displayName() + encodingNote(result) + (fromCache ? "  ·  cached" : ""));
+                animateStatsUpdate(result);
+                if (folderMode) showBreakdown();
+                if (archive != null) {
+                    showArchive();
+                } else if (statistics != null) {
+                    showStatistics();
+                }
+                if (liveTailer != null) startTailing(liveTailer, displayName());
+                // a growing file's index would be stale at once, and an archive's content is not on disk
+                previewFile = !folderMode && archive == null && liveTailer == null ? files.get(0).toPath() : null;
+                previewButton.setVisible(previewFile != null);
+                if (probeFile != null) finishProbe(true);
+            } catch (InterruptedException ignored) {
+            } catch (ExecutionException ex) {
+                metrics.problem("analysing " + displayName(), ex.getCause());
+                if (probeFile != null) finishProbe(false);
+                JOptionPane.showMessageDialog(LuxuryFileAnalyzer.this, "Error reading file: " + ex.getCause().getMessage());
+            }
+        }
+
+        private void showBreakdown() {
+            fileLabel.setText(displayName() + "  ·  " + summary.files() + " files"
+                    + (summary.failed() > 0 ? ", " + summary.failed() + " skipped" : ""));
+        }
+
+        /** The largest entries of an archive with their compressed size. */
+        private void showArchive() {
+            fileLabel.setText(displayName() + encodingNote(archive.total())
+                    + String.format("  ·  %s, %d KB compressed (%.1f×)", archive.format().label(),
+                    archive.compressedBytes() / 1024, archive.ratio()));
+            if (archive.entries().size() < 2) return;
+            List<ArchiveResult.Entry> rows = new ArrayList<>(archive.entries());
+            rows.sort(Comparator.comparingLong((ArchiveResult.Entry r) -> r.result().bytes()).reversed());
+            StringBuilder sb = new StringBuilder(String.format("%-40s %12s %14s %10s %10s %12s%n",
+                    "Largest entries (" + rows.size() + ")", "Words", "Characters", "Lines", "KB", "Packed KB"));
+            for (ArchiveResult.Entry row : rows.subList(0, Math.min(TOP_ENTRIES, rows.size()))) {
+                String name = row.name();
+                if (name.length() > 40) name = "…" + name.substring(name.length() - 39);
+                AnalysisResult r = row.result();
+                sb.append(String.format("%-40s %12d %14d %10d %10d %12d%n", name, r.words(), r.chars(), r.lines(),
+                        r.sizeKB(), Math.max(0, row.compressedBytes()) / 1024));
+            }
+            showBreakdownText(sb.toString());
+        }
+
+        private void showStatistics() {
+            StringBuilder sb = new StringBuilder();
+            for (StatisticsCollector s : statistics) {
+                if (!s.applicable()) continue;
+                sb.append(s.name()).append(System.lineSeparator());
+                for (Map.Entry<String, Object> e : s.summary().entrySet()) {
+                    if (e.getValue() instanceof Map) {
+                        sb.append(String.format("  %s%n", e.getKey()));
+                        for (Map.Entry<?, ?> row : ((Map<?, ?>) e.getValue()).entrySet()) {
+                            sb.append(String.format("    %-40s %14s%n", row.getKey(), row.getValue()));
+                        }
+                    } else {
+                        sb.append(String.format("  %-42s %14s%n", e.getKey(), e.getValue()));
+                    }
+                }
+            }
+            showBreakdownText(sb.toString());
+        }
     }
 
     // ------------------- File Analysis -------------------
-    private void animateStatsUpdate(File file) {
-        try {
-            java.util.List<String> lines = Files.readAllLines(Paths.get(file.getAbsolutePath()));
-            long words = lines.stream().flatMap(l -> Arrays.stream(l.split("\\s+"))).filter(w -> !w.isEmpty()).count();
-            long chars = lines.stream().mapToInt(String::length).sum();
-            long lineCount = lines.size();
-            long sizeKB = Files.size(Paths.get(file.getAbsolutePath())) / 1024;
-
-            Timer timer = new Timer(30, null);
-            int steps = 15;
-            long wStart = Long.parseLong(wordsLabel.getText().replaceAll("\\D", ""));
-            long cStart = Long.parseLong(charsLabel.getText().replaceAll("\\D", ""));
-            long lStart = Long.parseLong(linesLabel.getText().replaceAll("\\D", ""));
-            long sStart = Long.parseLong(sizeLabel.getText().replaceAll("\\D", ""));
-            int[] step = {0};
-
-            timer.addActionListener(ev -> {
-                if (step[0] >= steps) {
+    private void animateStatsUpdate(AnalysisResult result) {
+        long words = result.words();
+        long chars = result.chars();
+        long lineCount = result.lines();
+        long sizeKB = result.sizeKB();
+
+        scheduler.stop(statsTransition);
+        long wStart = Long.parseLong(wordsLabel.getText().replaceAll("\\D", ""));
+        long cStart = Long.parseLong(charsLabel.getText().replaceAll("\\D", ""));
+        long lStart = Long.parseLong(linesLabel.getText().replaceAll("\\D", ""));
+        long sStart = Long.parseLong(sizeLabel.getText().replaceAll("\\D", ""));
+
+        statsTransition = scheduler.start(new AnimationScheduler.Transition(450) {
+            @Override
+            protected void apply(float fraction) {
+                if (fraction >= 1f) {
                     wordsLabel.setText(words + "");
                     charsLabel.setText(chars + "");
                     linesLabel.setText(lineCount + "");
                     sizeLabel.setText(sizeKB + " KB");
-                    ((Timer) ev.getSource()).stop();
                     return;
                 }
-                wordsLabel.setText(wStart + (words - wStart) * step[0] / steps + "");
-                charsLabel.setText(cStart + (chars - cStart) * step[0] / steps + "");
-                linesLabel.setText(lStart + (lineCount - lStart) * step[0] / steps + "");
-                sizeLabel.setText(sStart + (sizeKB - sStart) * step[0] / steps + " KB");
-                step[0]++;
-            });
-            timer.start();
-
-        } catch (Exception ex) {
-            JOptionPane.showMessageDialog(this, "Error reading file: " + ex.getMessage());
-        }
+                wordsLabel.setText(wStart + (long) ((words - wStart) * (double) fraction) + "");
+                charsLabel.setText(cStart + (long) ((chars - cStart) * (double) fraction) + "");
+                linesLabel.setText(lStart + (long) ((lineCount - lStart) * (double) fraction) + "");
+                sizeLabel.setText(sStart + (long) ((sizeKB - sStart) * (double) fraction) + " KB");
+            }
+        });
     }
 
     // ------------------- Card Hover Animation -------------------
     private void animateCardHover(JPanel card, boolean enter) {
-        Timer timer = new Timer(15, null);
-        int steps = 10;
-        int[] count = {0};
         int shadowStart = enter ? 12 : 20;
         int shadowEnd = enter ? 20 : 12;
 
-        timer.addActionListener(e -> {
-            float ratio = (float) count[0] / steps;
-            int val = (int) (shadowStart * (1 - ratio) + shadowEnd * ratio);
-            card.putClientProperty(FlatClientProperties.STYLE,
-                    "arc:20; background:#FFFFFFDD; borderWidth:0; shadowWidth:" + val + "; shadowOpacity:0.18;");
-            card.repaint();
-            count[0]++;
-            if (count[0] > steps) ((Timer) e.getSource()).stop();
-        });
-        timer.start();
+        // A new hover replaces the card's running one instead of fighting it
+        scheduler.stop((AnimationScheduler.Transition) card.getClientProperty("hoverTransition"));
+        card.putClientProperty("hoverTransition", scheduler.start(new AnimationScheduler.Transition(150) {
+            @Override
+            protected void apply(float ratio) {
+                int val = (int) (shadowStart * (1 - ratio) + shadowEnd * ratio);
+                card.putClientProperty(FlatClientProperties.STYLE,
+                        "arc:20; background:#FFFFFFDD; borderWidth:0; shadowWidth:" + val + "; shadowOpacity:0.18;");
+                card.repaint();
+            }
+        }));
     }
 
     // ------------------- Dark / Light Theme -------------------
+    /**
+     * Swapping the look and feel re-lays out every component, which would
+     * stall the cards an analysis is updating, so while one runs the switch
+     * waits for it to finish; clicking again before then takes it back.
+     */
     private void toggleTheme(ActionEvent e) {
+        themePending = !themePending;
+        boolean dark = darkMode != themePending;
+        themeButton.setText(dark ? "🌙 Dark" : "☀ Light");
+        themeButton.setToolTipText(themePending ? "Switches when the analysis finishes" : null);
+        if (currentWorker == null) applyTheme();
+    }
+
+    private void applyTheme() {
+        if (!themePending) return;
+        themePending = false;
+        themeButton.setToolTipText(null);
         try {
             if (darkMode) {
                 FlatLightLaf.setup();
-                themeButton.setText("☀ Light");
             } else {
                 FlatDarkLaf.setup();
-                themeButton.setText("🌙 Dark");
             }
             darkMode = !darkMode;
             SwingUtilities.updateComponentTreeUI(this);
+            if (diagnostics != null) SwingUtilities.updateComponentTreeUI(diagnostics);
+            if (preview != null) SwingUtilities.updateComponentTreeUI(preview);
         } catch (Exception ex) {
-            ex.printStackTrace();
+            metrics.problem("switching theme", ex);
+        }
+    }
+
+    // ------------------- Preview (Ctrl+G) -------------------
+    /** Opens the last analysed file in a preview window, indexing its lines first if no index is cached. */
+    private void openPreview() {
+        if (previewFile == null) return;
+        if (preview != null && preview.isDisplayable() && previewFile.equals(previewOf)) {
+            preview.toFront();
+            if (previewPane != null) previewPane.focusGoto();
+            return;
+        }
+        if (preview != null) {
+            closePreviewPane();
+            preview.dispose();
+        }
+        Path file = previewFile;
+        JDialog dialog = new JDialog(this, "Preview · " + file.getFileName(), false);
+        dialog.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        JLabel status = new JLabel("Indexing lines…", SwingConstants.CENTER);
+        dialog.getContentPane().add(status, BorderLayout.CENTER);
+        dialog.setSize(900, 600);
+        dialog.setLocationRelativeTo(this);
+        PreviewIndexer indexer = new PreviewIndexer(file, dialog, status);
+        dialog.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                indexer.cancel(true);
+                if (dialog != preview) return;
+                closePreviewPane();
+                preview = null;
+                previewOf = null;
+            }
+        });
+        preview = dialog;
+        previewOf = file;
+        dialog.setVisible(true);
+        indexer.execute();
+    }
+
+    private void closePreviewPane() {
+        if (previewPane == null) return;
+        try {
+            previewPane.close();
+        } catch (IOException ignored) {
+        }
+        previewPane = null;
+    }
+
+    /**
+     * Loads the cached line index of the previewed file, or builds and caches it, then shows the file.
+     * UTF-16 and UTF-32 files cannot be indexed, which their first bytes tell without a pass.
+     */
+    class PreviewIndexer extends SwingWorker<LineIndex, Long> implements AnalysisMonitor {
+        private final Path file;
+        private final JDialog dialog;
+        private final JLabel status;
+        private volatile TextEncoding encoding;
+
+        PreviewIndexer(Path file, JDialog dialog, JLabel status) {
+            this.file = file;
+            this.dialog = dialog;
+            this.status = status;
+        }
+
+        @Override
+        protected LineIndex doInBackground() throws IOException {
+            LineIndex index = cache().lineIndex(file);
+            if (index != null) return index;
+            encoding = TextEncoding.detect(file);
+            if (encoding.kind() == TextEncoding.Kind.DECODED) return null;
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            index = new LineIndex();
+            engine.analyze(file, FileAnalysisEngine.Mode.AUTO, this, Collections.singletonList(index));
+            cache().putLineIndex(file, attrs, index);
+            return index;
+        }
+
+        @Override
+        public void progress(long bytesProcessed, long totalBytes) {
+            publish(totalBytes > 0 ? bytesProcessed * 100 / totalBytes : 0);
+        }
+
+        @Override
+        protected void process(List<Long> percent) {
+            status.setText("Indexing lines…  " + percent.get(percent.size() - 1) + "%");
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled() || dialog != preview) return;
+            try {
+                LineIndex index = get();
+                if (index == null) {
+                    status.setText("No preview for " + encoding.charset().name() + " text");
+                    return;
+                }
+                previewPane = new LinePreview(file, index);
+                dialog.getContentPane().removeAll();
+                dialog.getContentPane().add(previewPane, BorderLayout.CENTER);
+                dialog.getContentPane().revalidate();
+                previewPane.focusGoto();
+            } catch (InterruptedException ignored) {
+            } catch (ExecutionException | IOException ex) {
+                Throwable cause = ex instanceof ExecutionException ? ex.getCause() : ex;
+                metrics.problem("previewing " + file, cause);
+                status.setText("Cannot preview the file: " + cause.getMessage());
+            }
         }
     }
 
+    // ------------------- Diagnostics (F2) -------------------
+    private void toggleDiagnostics() {
+        if (diagnostics == null) diagnostics = createDiagnostics();
+        diagnostics.setVisible(!diagnostics.isVisible());
+    }
+
+    /** A small window over the frame that shows {@link AnalysisMetrics}, refreshed every second while open. */
+    private JDialog createDiagnostics() {
+        JDialog dialog = new JDialog(this, "Diagnostics", false);
+        JTextArea text = new JTextArea(20, 90);
+        text.setEditable(false);
+        text.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        Timer refresh = new Timer(1000, e -> {
+            int caret = text.getCaretPosition();
+            text.setText(diagnosticsText());
+            text.setCaretPosition(Math.min(caret, text.getDocument().getLength()));
+        });
+        refresh.setInitialDelay(0);
+
+        JButton copy = new JButton("Copy JSON");
+        copy.putClientProperty(FlatClientProperties.BUTTON_TYPE, "roundRect");
+        copy.addActionListener(e -> Toolkit.getDefaultToolkit().getSystemClipboard()
+                .setContents(new StringSelection(metrics.dumpJson()), null));
+        JButton reset = new JButton("Reset");
+        reset.putClientProperty(FlatClientProperties.BUTTON_TYPE, "roundRect");
+        reset.addActionListener(e -> {
+            metrics.reset();
+            text.setText(diagnosticsText());
+        });
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT, 10, 5));
+        buttons.add(reset);
+        buttons.add(copy);
+
+        dialog.getContentPane().add(new JScrollPane(text), BorderLayout.CENTER);
+        dialog.getContentPane().add(buttons, BorderLayout.SOUTH);
+        dialog.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentShown(ComponentEvent e) {
+                refresh.start();
+            }
+
+            @Override
+            public void componentHidden(ComponentEvent e) {
+                refresh.stop();
+            }
+        });
+        dialog.pack();
+        dialog.setLocationRelativeTo(this);
+        return dialog;
+    }
+
+    private String diagnosticsText() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-12s %d (%d failed, %d cancelled)%n", "Analyses",
+                metrics.getAnalyses(), metrics.getFailures(), metrics.getCancelled()));
+        sb.append(String.format("%-12s %d KB in %d ms  ·  %.1f MB/s%n", "Read",
+                metrics.getBytesRead() / 1024, metrics.getAnalysisMillis(), metrics.getThroughputMBps()));
+        sb.append(String.format("%-12s %d KB on the analysing threads%n", "Allocated",
+                metrics.getAllocatedBytes() / 1024));
+        sb.append(String.format("%-12s %d live%n", "Threads", metrics.getThreadCount()));
+        sb.append(String.format("%-12s %d hits, %d misses, %d evictions, %d entries%n", "Cache",
+                metrics.getCacheHits(), metrics.getCacheMisses(), metrics.getCacheEvictions(),
+                metrics.getCacheEntries()));
+        sb.append(String.format("%-12s %s  ·  %.1f ms per frame%n", "Kernel",
+                CountingKernel.active().name(), backgroundPanel.averageFrameMillis()));
+        sb.append(String.format("%-12s %s%n", "Startup", String.join(", ", metrics.getStartupMilestones())));
+        sb.append(String.format("%nRecent analyses%n"));
+        for (String line : metrics.getRecentAnalyses()) sb.append("  ").append(line).append(System.lineSeparator());
+        sb.append(String.format("%nProblems%n"));
+        for (String line : metrics.getRecentProblems()) sb.append("  ").append(line).append(System.lineSeparator());
+        return sb.toString();
+    }
+
     // ------------------- Main -------------------
+    /** {@code --startup-probe FILE} analyses FILE once the window is up, prints the startup milestones and exits. */
     public static void main(String[] args) {
+        File probe = args.length == 2 && args[0].equals("--startup-probe") ? new File(args[1]) : null;
         try {
             FlatLightLaf.setup();
         } catch (Exception ignored) {}
-        SwingUtilities.invokeLater(() -> new LuxuryFileAnalyzer().setVisible(true));
+        if (probe != null && GraphicsEnvironment.isHeadless()) {
+            headlessProbe(probe.toPath());
+            return;
+        }
+        SwingUtilities.invokeLater(() -> {
+            LuxuryFileAnalyzer frame = new LuxuryFileAnalyzer();
+            frame.probeFile = probe;
+            frame.setVisible(true);
+        });
     }
 }
\ No newline at end of file
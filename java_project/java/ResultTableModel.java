@@ -0,0 +1,206 @@
+import javax.swing.table.AbstractTableModel;
+import java.util.Arrays;
+
+/**
+ * Table model for the per-file results of a folder or multi-file analysis,
+ * sized for hundreds of thousands of rows. Every column is a primitive array
+ * and the view order is an {@code int[]} permutation of the rows, so a row
+ * costs its name and four longs, sorting never boxes a value, and the table
+ * only asks for the cells it paints.
+ *
+ * Results arrive from the analysis threads through {@link #add}, which only
+ * buffers them; {@link #flush()} moves the buffer into the table on the event
+ * dispatch thread with one event per batch. While a column is sorted, a batch
+ * is sorted on its own and merged into the order in a single pass.
+ */
+final class ResultTableModel extends AbstractTableModel {
+
+    static final int NAME = 0;
+    static final int WORDS = 1;
+    static final int CHARS = 2;
+    static final int LINES = 3;
+    static final int SIZE = 4;
+
+    private static final String[] COLUMNS = {"File", "Words", "Characters", "Lines", "KB"};
+    private static final int INSERTION_SORT = 16;
+
+    private final Object lock = new Object();
+    private Rows pending = new Rows(256); // filled by the analysis threads, guarded by lock
+    private Rows spare = new Rows(256);
+
+    private final Rows rows = new Rows(1024);
+    private int[] order = new int[1024];  // view row -> model row
+    private int[] scratch = new int[1024];
+    private int sortColumn = -1;
+    private boolean descending;
+    private long words, chars, lines, bytes;
+
+    /** Parallel column arrays; {@code values} holds words, characters, lines and bytes. */
+    private static final class Rows {
+        String[] names;
+        final long[][] values = new long[4][];
+        int size;
+
+        Rows(int capacity) {
+            names = new String[capacity];
+            for (int c = 0; c < values.length; c++) values[c] = new long[capacity];
+        }
+
+        void add(String name, long words, long chars, long lines, long bytes) {
+            if (size == names.length) grow(size + 1);
+            names[size] = name;
+            values[0][size] = words;
+            values[1][size] = chars;
+            values[2][size] = lines;
+            values[3][size] = bytes;
+            size++;
+        }
+
+        void addAll(Rows other) {
+            if (names.length < size + other.size) grow(size + other.size);
+            System.arraycopy(other.names, 0, names, size, other.size);
+            for (int c = 0; c < values.length; c++) System.arraycopy(other.values[c], 0, values[c], size, other.size);
+            size += other.size;
+        }
+
+        void clear() {
+            Arrays.fill(names, 0, size, null);
+            size = 0;
+        }
+
+        private void grow(int minCapacity) {
+            int capacity = Math.max(minCapacity, names.length * 2);
+            names = Arrays.copyOf(names, capacity);
+            for (int c = 0; c < values.length; c++) values[c] = Arrays.copyOf(values[c], capacity);
+        }
+    }
+
+    /** Buffers one file's result until the next {@link #flush()}; may be called from any thread. */
+    void add(String name, AnalysisResult result) {
+        synchronized (lock) {
+            pending.add(name, result.words(), result.chars(), result.lines(), result.bytes());
+        }
+    }
+
+    /** Moves the buffered results into the table; on the event dispatch thread. Returns false if there were none. */
+    boolean flush() {
+        Rows batch;
+        synchronized (lock) {
+            if (pending.size == 0) return false;
+            batch = pending;
+            pending = spare;
+        }
+        int from = rows.size;
+        rows.addAll(batch);
+        for (int i = 0; i < batch.size; i++) {
+            words += batch.values[0][i];
+            chars += batch.values[1][i];
+            lines += batch.values[2][i];
+            bytes += batch.values[3][i];
+        }
+        batch.clear();
+        spare = batch;
+
+        int to = rows.size;
+        if (order.length < to) {
+            order = Arrays.copyOf(order, rows.names.length);
+            scratch = new int[rows.names.length];
+        }
+        if (sortColumn < 0) {
+            for (int i = from; i < to; i++) order[i] = i;
+            fireTableRowsInserted(from, to - 1);
+            return true;
+        }
+        int[] added = new int[to - from];
+        for (int i = 0; i < added.length; i++) added[i] = from + i;
+        sort(added, new int[added.length], 0, added.length);
+        merge(order, 0, from, added, 0, added.length, scratch, 0);
+        int[] merged = scratch;
+        scratch = order;
+        order = merged;
+        fireTableDataChanged();
+        return true;
+    }
+
+    /** Totals of the rows in the table, for the cards. */
+    AnalysisResult total() {
+        return new AnalysisResult(words, chars, lines, bytes);
+    }
+
+    // ------------------- Sorting -------------------
+
+    /** Sorts by {@code column}, numbers largest first; the same column again reverses the order. */
+    void sortBy(int column) {
+        descending = column == sortColumn ? !descending : column != NAME;
+        sortColumn = column;
+        // from arrival order, so equal rows keep it in both directions
+        for (int i = 0; i < rows.size; i++) order[i] = i;
+        sort(order, scratch, 0, rows.size);
+        fireTableDataChanged();
+    }
+
+    private int compare(int a, int b) {
+        int c = sortColumn == NAME
+                ? rows.names[a].compareToIgnoreCase(rows.names[b])
+                : Long.compare(rows.values[sortColumn - 1][a], rows.values[sortColumn - 1][b]);
+        return descending ? -c : c;
+    }
+
+    /** Stable merge sort of the row indices {@code a[lo, hi)}, with {@code tmp} at least as long. */
+    private void sort(int[] a, int[] tmp, int lo, int hi) {
+        if (hi - lo <= INSERTION_SORT) {
+            for (int i = lo + 1; i < hi; i++) {
+                int row = a[i];
+                int j = i - 1;
+                for (; j >= lo && compare(a[j], row) > 0; j--) a[j + 1] = a[j];
+                a[j + 1] = row;
+            }
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        sort(a, tmp, lo, mid);
+        sort(a, tmp, mid, hi);
+        if (compare(a[mid - 1], a[mid]) <= 0) return; // already in order, e.g. a sorted batch
+        System.arraycopy(a, lo, tmp, lo, hi - lo);
+        merge(tmp, lo, mid, tmp, mid, hi, a, lo);
+    }
+
+    /** Merges the sorted {@code x[xi, xEnd)} and {@code y[yi, yEnd)} into {@code out}, taking x first on ties. */
+    private void merge(int[] x, int xi, int xEnd, int[] y, int yi, int yEnd, int[] out, int o) {
+        while (xi < xEnd && yi < yEnd) out[o++] = compare(y[yi], x[xi]) < 0 ? y[yi++] : x[xi++];
+        System.arraycopy(x, xi, out, o, xEnd - xi);
+        System.arraycopy(y, yi, out, o + xEnd - xi, yEnd - yi);
+    }
+
+    // ------------------- TableModel -------------------
+
+    @Override
+    public int getRowCount() {
+        return rows.size;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    /** The column's title, with an arrow on the sorted one. */
+    @Override
+    public String getColumnName(int column) {
+        if (column != sortColumn) return COLUMNS[column];
+        return COLUMNS[column] + (descending ? " ▼" : " ▲");
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return column == NAME ? String.class : Long.class;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        int i = order[row];
+        if (column == NAME) return rows.names[i];
+        long value = rows.values[column - 1][i];
+        return column == SIZE ? value / 1024 : value;
+    }
+}
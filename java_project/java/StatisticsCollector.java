@@ -0,0 +1,79 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One statistic computed in the same pass as the word/char/line counts.
+ *
+ * A {@link TextCounter} feeds its collectors every buffer it counts (after the
+ * byte order mark), so adding a collector never adds a read of the file. For a
+ * parallel pass each segment gets its own collector from {@link #newSegment()}
+ * and the segments are merged left to right with {@link #merge}, exactly like
+ * the counter; a collector must give the same result whichever way its input
+ * was split. Text-level collectors (words, lines) only see input in a
+ * byte-counted {@link TextEncoding}; for decoded charsets they stay empty.
+ */
+public abstract class StatisticsCollector {
+
+    private byte[] scratch;
+    TextEncoding encoding = TextEncoding.UTF_8;
+
+    /** The default pipeline: top 20 words, line lengths, byte distribution. */
+    public static List<StatisticsCollector> standard() {
+        List<StatisticsCollector> collectors = new ArrayList<>();
+        collectors.add(new WordFrequencies(20));
+        collectors.add(new LineLengths());
+        collectors.add(new ByteStatistics());
+        return collectors;
+    }
+
+    public abstract String name();
+
+    /** True if the collector works on characters and needs a byte-counted encoding. */
+    boolean textLevel() {
+        return true;
+    }
+
+    /**
+     * False for a text-level collector over a decoded charset: it is never
+     * fed and has nothing to report.
+     */
+    public boolean applicable() {
+        return !textLevel() || encoding.kind() != TextEncoding.Kind.DECODED;
+    }
+
+    /** Called by the counter before any input, with the encoding of that input. */
+    void begin(TextEncoding encoding) {
+        this.encoding = encoding;
+    }
+
+    abstract void update(byte[] data, int off, int len);
+
+    /** Buffers without an array are copied through a small scratch array. */
+    void update(ByteBuffer buf, int from, int to) {
+        if (scratch == null) scratch = new byte[8192];
+        for (int i = from; i < to; i += scratch.length) {
+            int n = Math.min(scratch.length, to - i);
+            buf.get(i, scratch, 0, n);
+            update(scratch, 0, n);
+        }
+    }
+
+    /** An empty collector with the same settings, for a later segment of the input. */
+    public abstract StatisticsCollector newSegment();
+
+    /**
+     * Appends {@code next}, a collector from {@link #newSegment()} that saw the
+     * bytes directly after this one's.
+     */
+    public abstract void merge(StatisticsCollector next);
+
+    public abstract void reset();
+
+    /**
+     * The statistic for the input seen so far, as named values: numbers,
+     * booleans, strings, lists and nested maps, in display order.
+     */
+    public abstract Map<String, Object> summary();
+}
@@ -0,0 +1,87 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * SIMD-within-a-register counting kernel: eight bytes are loaded as one
+ * little-endian {@code long} and classified with exact, branch-free bit tricks
+ * that leave one flag per byte in the lane's high bit.
+ *
+ * Word starts are non-whitespace lanes whose previous lane is whitespace; the
+ * previous-lane mask is the whitespace mask shifted up one lane, with the
+ * carry from the last lane of the previous word (or the counter's in-word
+ * state) shifted in. Line feeds are discounted the same way when the previous
+ * lane is a CR. The tail shorter than eight bytes goes to the scalar kernel.
+ */
+final class SwarKernel extends CountingKernel {
+
+    private static final long LOW7 = 0x7F7F7F7F7F7F7F7FL;
+    private static final long HIGH = 0x8080808080808080L;
+    private static final long ONES = 0x0101010101010101L;
+
+    @Override
+    public String name() {
+        return "swar";
+    }
+
+    @Override
+    void count(TextCounter c, byte[] data, int off, int len) {
+        ByteBuffer wrapped = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        count(c, wrapped, off, off + len);
+    }
+
+    @Override
+    void count(TextCounter c, ByteBuffer buf, int from, int to) {
+        ByteBuffer le = buf.order() == ByteOrder.LITTLE_ENDIAN ? buf : buf.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        long words = 0, cont = 0, lead4 = 0, crs = 0, lfs = 0, lfAfterCr = 0;
+        // carries hold the previous byte's flag in bit 7 (lane 0's position)
+        long wsCarry = c.inWord ? 0 : 0x80;
+        long crCarry = c.prevCR ? 0x80 : 0;
+        int i = from;
+        int wordsEnd = to - 7;
+        for (; i < wordsEnd; i += 8) {
+            long x = le.getLong(i);
+            long ws = whitespace(x);
+            long cr = equal(x, 0x0D);
+            long lf = equal(x, 0x0A);
+
+            long prevWs = (ws << 8) | wsCarry;
+            words += Long.bitCount(~ws & prevWs & HIGH);
+            long prevCr = (cr << 8) | crCarry;
+            lfAfterCr += Long.bitCount(lf & prevCr);
+            crs += Long.bitCount(cr);
+            lfs += Long.bitCount(lf);
+
+            // continuation byte 10xxxxxx; 4-byte lead 11110xxx
+            cont += Long.bitCount(x & ~(x << 1) & HIGH);
+            lead4 += Long.bitCount(x & (x << 1) & (x << 2) & (x << 3) & ~(x << 4) & HIGH);
+
+            wsCarry = (ws >>> 56) & 0x80;
+            crCarry = (cr >>> 56) & 0x80;
+        }
+        c.words += words;
+        c.newlines += crs + lfs;
+        c.continuations += cont;
+        c.supplementary += lead4;
+        c.terminators += crs + lfs - lfAfterCr;
+        if (i > from) {
+            c.inWord = wsCarry == 0;
+            c.prevCR = crCarry != 0;
+        }
+        if (i < to) CountingKernel.Scalar.INSTANCE.count(c, le, i, to);
+    }
+
+    /** High bit set in every lane equal to {@code b}. */
+    private static long equal(long x, int b) {
+        long y = x ^ (ONES * b);
+        return ~(((y & LOW7) + LOW7) | y | LOW7);
+    }
+
+    /** High bit set in every lane holding one of {@code \t \n \x0B \f \r} or space. */
+    private static long whitespace(long x) {
+        long ascii = ~x & HIGH;
+        long low = (x & LOW7) | HIGH;
+        long ge9 = (low - ONES * 0x09) & HIGH;
+        long ge14 = (low - ONES * 0x0E) & HIGH;
+        return (ge9 & ~ge14 & ascii) | equal(x, 0x20);
+    }
+}
@@ -0,0 +1,345 @@
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Byte-level word/char/line counter fed from raw buffers in a {@link TextEncoding}.
+ *
+ * The rules mirror what {@code Files.readAllLines} + {@code split("\\s+")} produced:
+ * lines end at {@code \n}, {@code \r} or {@code \r\n}; a word is a run of
+ * characters outside {@code [ \t\n\x0B\f\r]}. Line terminators are not counted
+ * as characters, and a byte order mark is skipped. Two character counts are kept:
+ * <ul>
+ *   <li>{@code chars}: UTF-16 code units, i.e. what {@code String.length()} of
+ *       the decoded text would give; a supplementary character counts twice.</li>
+ *   <li>{@code codePoints}: Unicode code points; every character counts once.</li>
+ * </ul>
+ *
+ * UTF-8 and single-byte charsets are counted straight from the bytes by a
+ * {@link CountingKernel}, chosen once per JVM: only UTF-8 lead bytes are
+ * counted, so a sequence split across two buffers is counted exactly once, and
+ * a {@link Utf8Validator} counts malformed sequences alongside. Other charsets
+ * are decoded into a reused {@link CharBuffer}; a malformed or unmappable input
+ * sequence counts as one malformed sequence and one replacement character
+ * instead of failing the analysis.
+ *
+ * The counter keeps no per-byte allocations and can be fed any number of
+ * buffers. Two byte-counted counters over adjacent ranges can be joined with
+ * {@link #merge}. Optional {@link StatisticsCollector}s see the same buffers
+ * and are merged along with the counts.
+ */
+public final class TextCounter {
+
+    static final boolean[] WHITESPACE = new boolean[256];
+
+    static {
+        WHITESPACE[' '] = true;
+        WHITESPACE['\t'] = true;
+        WHITESPACE['\n'] = true;
+        WHITESPACE[0x0B] = true;
+        WHITESPACE['\f'] = true;
+        WHITESPACE['\r'] = true;
+    }
+
+    private final CountingKernel kernel;
+    private final TextEncoding encoding;
+    private final Utf8Validator validator;
+    private final Decoding decoding;
+    private final boolean atStart;
+    private final StatisticsCollector[] collectors;
+    private final StatisticsCollector[] fed;   // the collectors that apply to this encoding
+    private int preamble;
+    private long bytes;
+    // advanced by the kernel
+    long words;
+    long terminators;
+    long newlines;       // CR and LF bytes, not characters
+    long continuations;  // UTF-8 10xxxxxx bytes
+    long supplementary;  // UTF-8 4-byte leads, or decoded surrogate pairs
+    boolean inWord;
+    boolean prevCR;
+    private int firstByte = -1;
+    private int lastByte = -1;
+
+    public TextCounter() {
+        this(CountingKernel.active(), TextEncoding.UTF_8);
+    }
+
+    public TextCounter(CountingKernel kernel) {
+        this(kernel, TextEncoding.UTF_8);
+    }
+
+    public TextCounter(TextEncoding encoding) {
+        this(CountingKernel.active(), encoding);
+    }
+
+    public TextCounter(CountingKernel kernel, TextEncoding encoding) {
+        this(kernel, encoding, true);
+    }
+
+    /** Also feeds {@code collectors}, which must be empty. */
+    public TextCounter(TextEncoding encoding, List<StatisticsCollector> collectors) {
+        this(CountingKernel.active(), encoding, true, collectors);
+    }
+
+    /** {@code atStart} is false for a counter over a later segment of the input, which has no byte order mark. */
+    TextCounter(CountingKernel kernel, TextEncoding encoding, boolean atStart) {
+        this(kernel, encoding, atStart, Collections.emptyList());
+    }
+
+    TextCounter(CountingKernel kernel, TextEncoding encoding, boolean atStart, List<StatisticsCollector> collectors) {
+        this.kernel = kernel;
+        this.encoding = encoding;
+        this.atStart = atStart;
+        this.preamble = atStart ? encoding.bomLength() : 0;
+        this.validator = encoding.kind() == TextEncoding.Kind.UTF8 ? new Utf8Validator() : null;
+        this.decoding = encoding.kind() == TextEncoding.Kind.DECODED ? new Decoding(encoding) : null;
+        this.collectors = collectors.toArray(new StatisticsCollector[0]);
+        for (StatisticsCollector c : this.collectors) c.begin(encoding);
+        this.fed = Arrays.stream(this.collectors)
+                .filter(StatisticsCollector::applicable)
+                .toArray(StatisticsCollector[]::new);
+    }
+
+    public TextEncoding encoding() {
+        return encoding;
+    }
+
+    public List<StatisticsCollector> statistics() {
+        return Collections.unmodifiableList(Arrays.asList(collectors));
+    }
+
+    public void update(ByteBuffer buf) {
+        int pos = skipPreamble(buf.position(), buf.limit());
+        int limit = buf.limit();
+        if (pos == limit) {
+            buf.position(limit);
+            return;
+        }
+        if (decoding != null) {
+            for (StatisticsCollector c : fed) c.update(buf, pos, limit);
+            buf.position(pos);
+            bytes += limit - pos;
+            decoding.decode(this, buf);
+            return;
+        }
+        if (buf.hasArray()) {
+            update(buf.array(), buf.arrayOffset() + pos, limit - pos);
+            buf.position(limit);
+            return;
+        }
+        if (firstByte < 0) firstByte = buf.get(pos) & 0xFF;
+        kernel.count(this, buf, pos, limit);
+        if (validator != null) kernel.validate(validator, buf, pos, limit);
+        for (StatisticsCollector c : fed) c.update(buf, pos, limit);
+        lastByte = buf.get(limit - 1) & 0xFF;
+        bytes += limit - pos;
+        buf.position(limit);
+    }
+
+    public void update(byte[] data, int off, int len) {
+        int start = skipPreamble(off, off + len);
+        len -= start - off;
+        off = start;
+        if (len <= 0) return;
+        for (StatisticsCollector c : fed) c.update(data, off, len);
+        if (decoding != null) {
+            bytes += len;
+            decoding.decode(this, ByteBuffer.wrap(data, off, len));
+            return;
+        }
+        if (firstByte < 0) firstByte = data[off] & 0xFF;
+        kernel.count(this, data, off, len);
+        if (validator != null) validator.update(data, off, len, kernel);
+        lastByte = data[off + len - 1] & 0xFF;
+        bytes += len;
+    }
+
+    private int skipPreamble(int from, int to) {
+        if (preamble == 0) return from;
+        int n = Math.min(preamble, to - from);
+        preamble -= n;
+        bytes += n;
+        return from + n;
+    }
+
+    /**
+     * Appends the counts of {@code next}, which must cover the bytes directly
+     * following this counter's range. Fixes up a word, a CRLF pair or a UTF-8
+     * sequence that straddles the boundary. Decoded charsets cannot be merged.
+     */
+    public void merge(TextCounter next) {
+        if (decoding != null || next.decoding != null) {
+            throw new IllegalStateException(encoding + " input is decoded and must be counted in one pass");
+        }
+        if (validator != null) validator.merge(next.validator);
+        for (int i = 0; i < collectors.length; i++) collectors[i].merge(next.collectors[i]);
+        if (next.firstByte < 0) {
+            bytes += next.bytes;
+            return;
+        }
+        if (firstByte < 0) {
+            copyFrom(next);
+            return;
+        }
+        words += next.words;
+        if (inWord && !WHITESPACE[next.firstByte]) words--;
+        terminators += next.terminators;
+        if (prevCR && next.firstByte == '\n') terminators--;
+        newlines += next.newlines;
+        continuations += next.continuations;
+        supplementary += next.supplementary;
+        bytes += next.bytes;
+        inWord = next.inWord;
+        prevCR = next.prevCR;
+        lastByte = next.lastByte;
+    }
+
+    public void reset() {
+        bytes = words = terminators = newlines = continuations = supplementary = 0;
+        inWord = prevCR = false;
+        firstByte = lastByte = -1;
+        preamble = atStart ? encoding.bomLength() : 0;
+        if (validator != null) validator.reset();
+        if (decoding != null) decoding.reset();
+        for (StatisticsCollector c : collectors) c.reset();
+    }
+
+    /** Bytes consumed so far, byte order mark included. */
+    public long bytes() {
+        return bytes;
+    }
+
+    public AnalysisResult result() {
+        long content = bytes - (atStart ? encoding.bomLength() - preamble : 0);
+        long chars, codePoints, malformed;
+        switch (encoding.kind()) {
+            case UTF8:
+                chars = content - continuations + supplementary - newlines;
+                codePoints = content - continuations - newlines;
+                malformed = validator.malformed(true);
+                break;
+            case SINGLE_BYTE:
+                chars = codePoints = content - newlines;
+                malformed = 0;
+                break;
+            default:
+                chars = decoding.chars;
+                codePoints = chars - supplementary;
+                malformed = decoding.malformed + (decoding.pending() ? 1 : 0);
+                break;
+        }
+        long lines = terminators;
+        if (lastByte >= 0 && lastByte != '\n' && lastByte != '\r') lines++;
+        return new AnalysisResult(words, chars, codePoints, lines, bytes, malformed, encoding.label());
+    }
+
+    private void copyFrom(TextCounter o) {
+        bytes += o.bytes;
+        words = o.words;
+        terminators = o.terminators;
+        newlines = o.newlines;
+        continuations = o.continuations;
+        supplementary = o.supplementary;
+        inWord = o.inWord;
+        prevCR = o.prevCR;
+        firstByte = o.firstByte;
+        lastByte = o.lastByte;
+    }
+
+    // ------------------- Decoded Charsets -------------------
+    /**
+     * Streaming decoder for charsets that cannot be counted per byte. Input is
+     * staged in a small buffer so that a character split across two updates
+     * is decoded whole; decoded text lands in a reused {@link CharBuffer} and
+     * is counted with the same rules as the byte kernels.
+     */
+    private static final class Decoding {
+        private static final int STAGING = 8 * 1024;
+        private static final char REPLACEMENT = '\uFFFD';
+
+        private final CharsetDecoder decoder;
+        private final ByteBuffer staging = ByteBuffer.allocate(STAGING);
+        private final CharBuffer out = CharBuffer.allocate(STAGING);
+        private boolean prevHigh;
+        long chars;
+        long malformed;
+
+        Decoding(TextEncoding encoding) {
+            decoder = encoding.charset().newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT);
+        }
+
+        void decode(TextCounter c, ByteBuffer src) {
+            while (src.hasRemaining()) {
+                int n = Math.min(src.remaining(), staging.remaining());
+                ByteBuffer slice = src.slice();
+                slice.limit(n);
+                staging.put(slice);
+                src.position(src.position() + n);
+                staging.flip();
+                while (true) {
+                    CoderResult r = decoder.decode(staging, out, false);
+                    out.flip();
+                    count(c, out);
+                    out.clear();
+                    if (r.isOverflow()) continue;
+                    if (r.isUnderflow()) break;
+                    malformed++;
+                    staging.position(staging.position() + r.length());
+                    count(c, REPLACEMENT);
+                }
+                staging.compact();
+            }
+        }
+
+        /** True if the input so far ends inside a character. */
+        boolean pending() {
+            return staging.position() > 0;
+        }
+
+        private void count(TextCounter c, CharBuffer text) {
+            for (int i = text.position(), end = text.limit(); i < end; i++) count(c, text.get(i));
+        }
+
+        private void count(TextCounter c, char ch) {
+            if (ch == '\n') {
+                if (!c.prevCR) c.terminators++;
+                c.newlines++;
+                c.prevCR = false;
+                c.inWord = false;
+            } else if (ch == '\r') {
+                c.terminators++;
+                c.newlines++;
+                c.prevCR = true;
+                c.inWord = false;
+            } else {
+                c.prevCR = false;
+                chars++;
+                if (Character.isLowSurrogate(ch) && prevHigh) c.supplementary++;
+                if (ch < 256 && WHITESPACE[ch]) {
+                    c.inWord = false;
+                } else if (!c.inWord) {
+                    c.words++;
+                    c.inWord = true;
+                }
+            }
+            prevHigh = Character.isHighSurrogate(ch);
+            c.lastByte = ch;
+        }
+
+        void reset() {
+            decoder.reset();
+            staging.clear();
+            out.clear();
+            prevHigh = false;
+            chars = malformed = 0;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The character encoding a {@link TextCounter} assumes for its input, and how
+ * it counts it.
+ *
+ * {@link Kind#UTF8} and {@link Kind#SINGLE_BYTE} (ASCII-compatible charsets in
+ * which every byte is one character, such as ISO-8859-1) are counted straight
+ * from the bytes. Anything else (UTF-16, UTF-32, multi-byte legacy charsets) is
+ * {@link Kind#DECODED} through a streaming {@link CharsetDecoder}.
+ *
+ * {@link #detect} looks for a byte order mark first, then guesses from a
+ * sampled prefix: UTF-16 if zero bytes sit in every other position, UTF-8 if
+ * the non-ASCII bytes mostly form valid UTF-8 sequences, else ISO-8859-1, which
+ * accepts any byte sequence.
+ */
+public final class TextEncoding {
+
+    public enum Kind { UTF8, SINGLE_BYTE, DECODED }
+
+    /** Prefix read by {@link #detect(FileChannel)}. */
+    public static final int SAMPLE_SIZE = 64 * 1024;
+
+    public static final TextEncoding UTF_8 = new TextEncoding(StandardCharsets.UTF_8, Kind.UTF8, 0);
+    public static final TextEncoding ISO_8859_1 = new TextEncoding(StandardCharsets.ISO_8859_1, Kind.SINGLE_BYTE, 0);
+
+    private final Charset charset;
+    private final Kind kind;
+    private final int bomLength;
+
+    private TextEncoding(Charset charset, Kind kind, int bomLength) {
+        this.charset = charset;
+        this.kind = kind;
+        this.bomLength = bomLength;
+    }
+
+    /** Counts input in {@code charset}, with no byte order mark. */
+    public static TextEncoding of(Charset charset) {
+        if (charset.equals(StandardCharsets.UTF_8)) return UTF_8;
+        if (charset.equals(StandardCharsets.ISO_8859_1)) return ISO_8859_1;
+        return new TextEncoding(charset, isSingleByte(charset) ? Kind.SINGLE_BYTE : Kind.DECODED, 0);
+    }
+
+    public Charset charset() {
+        return charset;
+    }
+
+    public Kind kind() {
+        return kind;
+    }
+
+    /** Bytes of byte order mark at the start of the input, skipped by the counter. */
+    public int bomLength() {
+        return bomLength;
+    }
+
+    /** e.g. {@code UTF-8}, {@code UTF-16LE BOM}. */
+    public String label() {
+        return bomLength > 0 ? charset.name() + " BOM" : charset.name();
+    }
+
+    @Override
+    public String toString() {
+        return label();
+    }
+
+    // ------------------- Detection -------------------
+    /** Detects the encoding of {@code file} from its first {@link #SAMPLE_SIZE} bytes. */
+    public static TextEncoding detect(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return detect(channel);
+        }
+    }
+
+    /** Detects the encoding of the file behind {@code channel} from its first {@link #SAMPLE_SIZE} bytes. */
+    public static TextEncoding detect(FileChannel channel) throws IOException {
+        long size = channel.size();
+        ByteBuffer sample = ByteBuffer.allocate((int) Math.min(size, SAMPLE_SIZE));
+        while (sample.hasRemaining()) {
+            if (channel.read(sample, sample.position()) < 0) break;
+        }
+        return detect(sample.array(), sample.position(), sample.position() >= size);
+    }
+
+    /**
+     * Detects the encoding from {@code sample[0, length)}. {@code complete}
+     * says the sample is the whole input, so a UTF-8 sequence cut at its end
+     * is malformed rather than truncated by sampling.
+     */
+    public static TextEncoding detect(byte[] sample, int length, boolean complete) {
+        TextEncoding bom = fromBom(sample, length);
+        if (bom != null) return bom;
+
+        int pairs = length / 2;
+        if (pairs >= 4) {
+            int zeroEven = 0, zeroOdd = 0;
+            for (int i = 0; i + 1 < length; i += 2) {
+                if (sample[i] == 0) zeroEven++;
+                if (sample[i + 1] == 0) zeroOdd++;
+            }
+            // mostly-Latin text in UTF-16 has a zero high byte in nearly every unit
+            if (zeroOdd * 5 >= pairs * 2 && zeroEven * 20 <= pairs) {
+                return new TextEncoding(StandardCharsets.UTF_16LE, Kind.DECODED, 0);
+            }
+            if (zeroEven * 5 >= pairs * 2 && zeroOdd * 20 <= pairs) {
+                return new TextEncoding(StandardCharsets.UTF_16BE, Kind.DECODED, 0);
+            }
+        }
+
+        Utf8Validator validator = new Utf8Validator();
+        validator.update(sample, 0, length);
+        long malformed = validator.malformed(complete);
+        // Latin-1 text almost never forms valid multi-byte sequences by accident
+        if (malformed == 0 || validator.sequences() >= 4 * malformed) return UTF_8;
+        return ISO_8859_1;
+    }
+
+    private static TextEncoding fromBom(byte[] b, int n) {
+        if (n >= 3 && (b[0] & 0xFF) == 0xEF && (b[1] & 0xFF) == 0xBB && (b[2] & 0xFF) == 0xBF) {
+            return new TextEncoding(StandardCharsets.UTF_8, Kind.UTF8, 3);
+        }
+        if (n >= 4 && (b[0] & 0xFF) == 0xFF && (b[1] & 0xFF) == 0xFE && b[2] == 0 && b[3] == 0) {
+            Charset utf32 = lookup("UTF-32LE");
+            if (utf32 != null) return new TextEncoding(utf32, Kind.DECODED, 4);
+        }
+        if (n >= 4 && b[0] == 0 && b[1] == 0 && (b[2] & 0xFF) == 0xFE && (b[3] & 0xFF) == 0xFF) {
+            Charset utf32 = lookup("UTF-32BE");
+            if (utf32 != null) return new TextEncoding(utf32, Kind.DECODED, 4);
+        }
+        if (n >= 2 && (b[0] & 0xFF) == 0xFF && (b[1] & 0xFF) == 0xFE) {
+            return new TextEncoding(StandardCharsets.UTF_16LE, Kind.DECODED, 2);
+        }
+        if (n >= 2 && (b[0] & 0xFF) == 0xFE && (b[1] & 0xFF) == 0xFF) {
+            return new TextEncoding(StandardCharsets.UTF_16BE, Kind.DECODED, 2);
+        }
+        return null;
+    }
+
+    private static Charset lookup(String name) {
+        return Charset.isSupported(name) ? Charset.forName(name) : null;
+    }
+
+    /**
+     * True if every byte decodes to exactly one char and bytes below 0x80 are
+     * ASCII, so whitespace, line breaks and characters can be counted per byte.
+     */
+    private static boolean isSingleByte(Charset charset) {
+        if (!charset.canEncode() || charset.newEncoder().maxBytesPerChar() != 1.0f) return false;
+        byte[] all = new byte[256];
+        for (int i = 0; i < 256; i++) all[i] = (byte) i;
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        try {
+            CharBuffer chars = decoder.decode(ByteBuffer.wrap(all));
+            if (chars.remaining() != 256) return false;
+            for (int i = 0; i < 0x80; i++) {
+                if (chars.get(i) != i) return false;
+            }
+            return true;
+        } catch (CharacterCodingException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Streaming UTF-8 well-formedness check that counts malformed sequences the
+ * way a {@link java.nio.charset.CharsetDecoder} reports them: each maximal
+ * ill-formed subsequence (a stray continuation byte, an invalid lead byte, or
+ * a lead byte followed by too few valid continuation bytes) counts once, i.e.
+ * once per U+FFFD the JDK's replacing decoder would emit. Overlong forms and
+ * code points above U+10FFFF are rejected by the second-byte ranges; an encoded
+ * surrogate is, like in the JDK, one malformed three-byte sequence.
+ *
+ * Runs of ASCII are skipped eight bytes at a time, and a kernel with a block
+ * check ({@link CountingKernel#wellFormedUtf8}) clears well-formed input
+ * without walking it. Continuation bytes at the very start of the input are
+ * held back, so validators over adjacent ranges can be joined with
+ * {@link #merge} exactly as if the input had been fed to one validator.
+ */
+final class Utf8Validator {
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long HIGH = 0x8080808080808080L;
+    private static final int FAST_BLOCK = 4096;
+
+    private long malformed;
+    private long sequences;
+    // pending multi-byte sequence: continuation bytes still expected, range allowed for the next one
+    private int need;
+    private int lower = 0x80;
+    private int upper = 0xBF;
+    private int lead;
+    private boolean surrogate; // ED A0-BF..: completes, but encodes a surrogate
+    // leading continuation bytes, resolved by merge() or counted as malformed at the start of input
+    private boolean started;
+    private long head;
+    private final int[] headBytes = new int[3];
+
+    void update(byte[] data, int off, int len) {
+        int end = off + len;
+        int i = started ? off : skipHead(data, off, end);
+        while (i < end) i = step(data, i, end);
+    }
+
+    /**
+     * Like {@link #update(byte[], int, int)}, but lets {@code kernel} check
+     * whole blocks for well-formedness first; only blocks it cannot vouch for
+     * are walked byte by byte.
+     */
+    void update(byte[] data, int off, int len, CountingKernel kernel) {
+        int end = off + len;
+        int i = started ? off : skipHead(data, off, end);
+        while (i < end) {
+            // the block check looks three bytes back, so it starts only where nothing
+            // before i (not even a broken lead byte) expects continuation bytes
+            if (need != 0 || i - off < 3 || reached(data, i)) {
+                i = step(data, i, end);
+                continue;
+            }
+            int blockEnd = end - i > FAST_BLOCK ? i + FAST_BLOCK : end;
+            if (!kernel.wellFormedUtf8(data, i, blockEnd)) {
+                while (i < blockEnd) i = step(data, i, blockEnd);
+                continue;
+            }
+            int tail = lastSequence(data, i, blockEnd);
+            if (tail == blockEnd || blockEnd < end) {
+                i = tail; // an incomplete last sequence is checked again with the next block
+            } else {
+                for (i = tail; i < end; ) i = step(data, i, end);
+            }
+        }
+    }
+
+    private static boolean reached(byte[] data, int i) {
+        return (data[i - 1] & 0xFF) >= 0xC0 || (data[i - 2] & 0xFF) >= 0xE0 || (data[i - 3] & 0xFF) >= 0xF0;
+    }
+
+    /** Start of the last sequence in a well-formed block if it is cut off by {@code to}, else {@code to}. */
+    private static int lastSequence(byte[] data, int from, int to) {
+        int k = to - 1;
+        while (k > from && to - k < 4 && (data[k] & 0xC0) == 0x80) k--;
+        int b = data[k] & 0xFF;
+        int length = b < 0x80 ? 1 : b < 0xE0 ? 2 : b < 0xF0 ? 3 : 4;
+        return to - k >= length ? to : k;
+    }
+
+    private int step(byte[] data, int i, int end) {
+        if (need == 0) {
+            while (i + 8 <= end && ((long) LONGS.get(data, i) & HIGH) == 0) i += 8;
+            if (i == end) return i;
+            int b = data[i++] & 0xFF;
+            if (b >= 0x80) start(b);
+            return i;
+        }
+        return accept(data[i] & 0xFF) ? i + 1 : i;
+    }
+
+    void update(ByteBuffer buf, int from, int to) {
+        int i = from;
+        if (!started) {
+            while (i < to && (buf.get(i) & 0xC0) == 0x80) addHead(buf.get(i++) & 0xFF);
+            if (i < to) started = true;
+        }
+        while (i < to) {
+            if (need == 0) {
+                while (i + 8 <= to && (buf.getLong(i) & HIGH) == 0) i += 8;
+                if (i == to) break;
+                int b = buf.get(i++) & 0xFF;
+                if (b >= 0x80) start(b);
+            } else if (accept(buf.get(i) & 0xFF)) {
+                i++;
+            }
+        }
+    }
+
+    private int skipHead(byte[] data, int i, int end) {
+        while (i < end && (data[i] & 0xC0) == 0x80) addHead(data[i++] & 0xFF);
+        if (i < end) started = true;
+        return i;
+    }
+
+    private void addHead(int b) {
+        if (head < headBytes.length) headBytes[(int) head] = b;
+        head++;
+    }
+
+    private void start(int b) {
+        lead = b;
+        if (b >= 0xC2 && b <= 0xDF) {
+            need = 1;
+        } else if (b >= 0xE0 && b <= 0xEF) {
+            need = 2;
+            if (b == 0xE0) lower = 0xA0;      // overlong
+        } else if (b >= 0xF0 && b <= 0xF4) {
+            need = 3;
+            if (b == 0xF0) lower = 0x90;      // overlong
+            else if (b == 0xF4) upper = 0x8F; // above U+10FFFF
+        } else {
+            malformed++; // stray continuation, C0/C1 or F5-FF
+        }
+    }
+
+    /**
+     * Feeds {@code b} to the pending sequence. Returns false if it does not
+     * continue it: the sequence so far is then malformed and {@code b} must be
+     * looked at again as the start of something new.
+     */
+    private boolean accept(int b) {
+        if (b >= lower && b <= upper) {
+            if (lead == 0xED && need == 2 && b >= 0xA0) surrogate = true;
+            lower = 0x80;
+            upper = 0xBF;
+            if (--need == 0) {
+                if (surrogate) malformed++;
+                else sequences++;
+                surrogate = false;
+            }
+            return true;
+        }
+        malformed++;
+        need = 0;
+        surrogate = false;
+        lower = 0x80;
+        upper = 0xBF;
+        return false;
+    }
+
+    /** Appends {@code next}, which must cover the bytes directly following this validator's range. */
+    void merge(Utf8Validator next) {
+        if (!started) {
+            for (int k = 0; k < Math.min(next.head, next.headBytes.length); k++) addHead(next.headBytes[k]);
+            head += Math.max(0, next.head - next.headBytes.length);
+            started = next.started;
+        } else {
+            long remaining = next.head;
+            for (int k = 0; k < next.headBytes.length && k < next.head && need > 0; k++) {
+                remaining--;
+                if (!accept(next.headBytes[k])) malformed++; // the byte is then a stray continuation
+            }
+            malformed += remaining;
+            if (next.started && need > 0) malformed++; // sequence cut short by next's first lead or ASCII byte
+            if (!next.started) return;
+        }
+        malformed += next.malformed;
+        sequences += next.sequences;
+        need = next.need;
+        lower = next.lower;
+        upper = next.upper;
+        lead = next.lead;
+        surrogate = next.surrogate;
+    }
+
+    void reset() {
+        malformed = sequences = head = 0;
+        need = 0;
+        lower = 0x80;
+        upper = 0xBF;
+        surrogate = started = false;
+    }
+
+    /**
+     * Malformed sequences so far. With {@code atEnd}, continuation bytes at the
+     * start of input and a sequence cut off at the end count as well.
+     */
+    long malformed(boolean atEnd) {
+        return atEnd ? malformed + head + (need > 0 ? 1 : 0) : malformed;
+    }
+
+    /** Well-formed multi-byte sequences seen. */
+    long sequences() {
+        return sequences;
+    }
+}
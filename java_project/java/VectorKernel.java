@@ -0,0 +1,160 @@
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Counting kernel on the incubating Vector API. Each step loads one
+ * {@link ByteVector} and the same vector shifted back by one byte, classifies
+ * both (whitespace, CR, LF, UTF-8 continuation and 4-byte lead) and counts
+ * word starts as "not whitespace, previous byte whitespace" with mask
+ * {@code trueCount}s only, which C2 keeps in vector registers.
+ *
+ * The same shifted loads (three bytes back) check UTF-8 well-formedness for
+ * {@link Utf8Validator}: a byte must be a continuation byte exactly when one
+ * of the three before it is a lead byte that reaches it, and the second byte
+ * after E0, ED, F0 and F4 has a narrower range.
+ *
+ * Only loaded by {@link CountingKernel} when the {@code jdk.incubator.vector}
+ * module is present. Direct buffers are copied through a small per-thread
+ * scratch array so that only the array loads, stable across JDK versions, are used.
+ */
+final class VectorKernel extends CountingKernel {
+
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+    private static final int SCRATCH = 64 * 1024;
+
+    private final ThreadLocal<byte[]> scratch = ThreadLocal.withInitial(() -> new byte[SCRATCH]);
+
+    VectorKernel() {
+        // Narrow vectors (no SIMD unit, or the API's Java fallback) lose to the SWAR kernel
+        if (LANES < 16) throw new UnsupportedOperationException("vector species too narrow: " + LANES);
+    }
+
+    @Override
+    public String name() {
+        return "vector";
+    }
+
+    @Override
+    void count(TextCounter c, ByteBuffer buf, int from, int to) {
+        if (buf.hasArray()) {
+            count(c, buf.array(), buf.arrayOffset() + from, to - from);
+            return;
+        }
+        byte[] tmp = scratch.get();
+        for (int i = from; i < to; i += SCRATCH) {
+            int n = Math.min(SCRATCH, to - i);
+            buf.get(i, tmp, 0, n);
+            count(c, tmp, 0, n);
+        }
+    }
+
+    @Override
+    void count(TextCounter c, byte[] data, int off, int len) {
+        if (len <= LANES) {
+            CountingKernel.Scalar.INSTANCE.count(c, data, off, len);
+            return;
+        }
+        // The first byte uses the carried state; after it every lane's predecessor is in the array
+        CountingKernel.Scalar.INSTANCE.count(c, data, off, 1);
+        long words = 0, cont = 0, lead4 = 0, crs = 0, lfs = 0, lfAfterCr = 0;
+        int i = off + 1;
+        int end = off + len;
+        int bound = end - LANES;
+        for (; i <= bound; i += LANES) {
+            ByteVector v = ByteVector.fromArray(SPECIES, data, i);
+            ByteVector prev = ByteVector.fromArray(SPECIES, data, i - 1);
+            VectorMask<Byte> cr = v.eq((byte) '\r');
+            VectorMask<Byte> lf = v.eq((byte) '\n');
+
+            words += whitespace(v).not().and(whitespace(prev)).trueCount();
+            lfAfterCr += lf.and(prev.eq((byte) '\r')).trueCount();
+            crs += cr.trueCount();
+            lfs += lf.trueCount();
+            cont += v.and((byte) 0xC0).eq((byte) 0x80).trueCount();
+            lead4 += v.and((byte) 0xF8).eq((byte) 0xF0).trueCount();
+        }
+        int vectorBytes = i - off - 1;
+        c.words += words;
+        c.newlines += crs + lfs;
+        c.continuations += cont;
+        c.supplementary += lead4;
+        c.terminators += crs + lfs - lfAfterCr;
+        if (vectorBytes > 0) {
+            int b = data[i - 1] & 0xFF;
+            c.inWord = !TextCounter.WHITESPACE[b];
+            c.prevCR = b == '\r';
+        }
+        if (i < end) CountingKernel.Scalar.INSTANCE.count(c, data, i, end - i);
+    }
+
+    @Override
+    void validate(Utf8Validator validator, ByteBuffer buf, int from, int to) {
+        if (buf.hasArray()) {
+            validator.update(buf.array(), buf.arrayOffset() + from, to - from, this);
+            return;
+        }
+        byte[] tmp = scratch.get();
+        for (int i = from; i < to; i += SCRATCH) {
+            int n = Math.min(SCRATCH, to - i);
+            buf.get(i, tmp, 0, n);
+            validator.update(tmp, 0, n, this);
+        }
+    }
+
+    @Override
+    boolean wellFormedUtf8(byte[] data, int from, int to) {
+        VectorMask<Byte> bad = SPECIES.maskAll(false);
+        int i = from;
+        for (int bound = to - LANES; i <= bound; i += LANES) {
+            // bytes are biased by 0x80 so that signed compares order them as unsigned
+            ByteVector v = biased(data, i);
+            ByteVector p1 = biased(data, i - 1);
+            ByteVector p2 = biased(data, i - 2);
+            ByteVector p3 = biased(data, i - 3);
+            VectorMask<Byte> expected = ge(p1, 0xC0).or(ge(p2, 0xE0)).or(ge(p3, 0xF0));
+            VectorMask<Byte> cont = ge(v, 0x80).and(ge(v, 0xC0).not());
+            bad = bad.or(expected.and(cont.not())).or(cont.and(expected.not()))
+                    .or(eq(v, 0xC0)).or(eq(v, 0xC1)).or(ge(v, 0xF5))
+                    .or(eq(p1, 0xE0).and(ge(v, 0xA0).not()))
+                    .or(eq(p1, 0xED).and(ge(v, 0xA0)))
+                    .or(eq(p1, 0xF0).and(ge(v, 0x90).not()))
+                    .or(eq(p1, 0xF4).and(ge(v, 0x90)));
+        }
+        if (bad.anyTrue()) return false;
+        for (; i < to; i++) {
+            int b = data[i] & 0xFF;
+            int p1 = data[i - 1] & 0xFF;
+            boolean expected = p1 >= 0xC0 || (data[i - 2] & 0xFF) >= 0xE0 || (data[i - 3] & 0xFF) >= 0xF0;
+            if (expected != ((b & 0xC0) == 0x80) || b == 0xC0 || b == 0xC1 || b >= 0xF5
+                    || (p1 == 0xE0 && b < 0xA0) || (p1 == 0xED && b >= 0xA0)
+                    || (p1 == 0xF0 && b < 0x90) || (p1 == 0xF4 && b >= 0x90)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ByteVector biased(byte[] data, int i) {
+        return ByteVector.fromArray(SPECIES, data, i).lanewise(VectorOperators.XOR, (byte) 0x80);
+    }
+
+    /** {@code v >= unsigned} for a biased vector. */
+    private static VectorMask<Byte> ge(ByteVector v, int unsigned) {
+        return v.compare(VectorOperators.GE, (byte) (unsigned ^ 0x80));
+    }
+
+    private static VectorMask<Byte> eq(ByteVector v, int unsigned) {
+        return v.eq((byte) (unsigned ^ 0x80));
+    }
+
+    private static VectorMask<Byte> whitespace(ByteVector v) {
+        // signed compare: bytes >= 0x80 are negative and never fall in [0x09, 0x0E)
+        return v.eq((byte) ' ').or(v.compare(VectorOperators.GE, (byte) 0x09)
+                .and(v.compare(VectorOperators.LT, (byte) 0x0E)));
+    }
+}
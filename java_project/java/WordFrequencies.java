@@ -0,0 +1,406 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * The {@code k} most frequent words. Words are split on whitespace exactly as
+ * the word count splits them, then ASCII punctuation is trimmed from both ends
+ * and ASCII letters are lower-cased, so "The" and "the," are one word. Words are
+ * compared by their first {@link #MAX_WORD} bytes.
+ *
+ * Counts are exact while the vocabulary fits in {@code maxEntries}. Past that
+ * the collector switches to approximate mode: every word goes into a
+ * {@link CountMinSketch} about as large as the exact table was, and only the
+ * 8k words with the highest estimates are kept by name, in a min-heap, so the
+ * top words and their counts become estimates that are never too low. An
+ * estimate is at most {@code 2N/width} too high (N words counted, with
+ * probability {@code 1 - 2^-depth}); the summary reports that bound and leaves
+ * out words whose estimate minus the bound does not beat the best word left
+ * out, as those could be noise.
+ *
+ * Within a segment the first word may have started in the previous segment and
+ * the last one may go on in the next, so both are held back until
+ * {@link #merge} or the result joins them.
+ */
+public final class WordFrequencies extends StatisticsCollector {
+
+    public static final int MAX_WORD = 64;
+    public static final int DEFAULT_MAX_ENTRIES = 1 << 20;
+
+    private static final int SKETCH_DEPTH = 4;
+
+    private static final boolean[] SPACE = new boolean[256];
+    private static final boolean[] PUNCT = new boolean[256];
+    static {
+        for (char c : " \t\n\u000B\f\r".toCharArray()) SPACE[c] = true;
+        for (char c : "!\"#$%&'()*+,-./:;<=>?@[\\]^_`{|}~".toCharArray()) PUNCT[c] = true;
+    }
+
+    private final int k;
+    private final int maxEntries;
+    private final boolean offHeap;
+
+    private WordTable table;
+    private CountMinSketch sketch;   // non-null in approximate mode; the table then holds the candidates
+    private int[] heap;              // candidate entries, lowest count first
+    private int[] heapIndex;         // position of each candidate entry in the heap
+    private long counted;            // words counted, held-back ones excluded
+
+    private boolean any;
+    private boolean sawSpace;        // false: the whole segment so far is one word, kept in tail
+    private final byte[] head = new byte[MAX_WORD + 8]; // slack for WordTable's 8-byte reads
+    private int headLength;          // lengths are capped at MAX_WORD + 1, meaning "longer"
+    private final byte[] tail = new byte[MAX_WORD + 8];
+    private int tailLength;
+    private final byte[] scratch = new byte[2 * MAX_WORD + 8];
+
+    public WordFrequencies(int k) {
+        this(k, DEFAULT_MAX_ENTRIES, false);
+    }
+
+    /**
+     * @param maxEntries distinct words counted exactly before switching to approximate mode
+     * @param offHeap    keep the word bytes in direct memory
+     */
+    public WordFrequencies(int k, int maxEntries, boolean offHeap) {
+        if (k < 1) throw new IllegalArgumentException("k must be positive: " + k);
+        this.k = k;
+        this.maxEntries = Math.max(maxEntries, candidateLimit(k));
+        this.offHeap = offHeap;
+        this.table = new WordTable(this.maxEntries, offHeap);
+    }
+
+    private static int candidateLimit(int k) {
+        return Math.max(64, 8 * k);
+    }
+
+    @Override
+    public String name() {
+        return "words";
+    }
+
+    public boolean approximate() {
+        return sketch != null;
+    }
+
+    // ------------------- Counting -------------------
+    @Override
+    void update(byte[] data, int off, int len) {
+        if (len <= 0) return;
+        any = true;
+        int n = tailLength;
+        int i = off;
+        int end = off + len;
+        while (i < end) {
+            if (SPACE[data[i] & 0xFF]) {
+                if (!sawSpace) {
+                    sawSpace = true;
+                    System.arraycopy(tail, 0, head, 0, Math.min(n, MAX_WORD));
+                    headLength = n;
+                } else if (n > 0) {
+                    count(tail, n);
+                }
+                n = 0;
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < end && !SPACE[data[i] & 0xFF]) i++;
+            n = appendFolded(n, data, start, i);
+        }
+        tailLength = n;
+    }
+
+    /** Appends {@code data[from, to)} to the word in {@code tail}, lower-casing ASCII. */
+    private int appendFolded(int n, byte[] data, int from, int to) {
+        if (n > MAX_WORD) return n;
+        int copy = Math.min(to - from, MAX_WORD - n);
+        byte[] word = tail;
+        for (int j = 0; j < copy; j++) {
+            int b = data[from + j];
+            // sets bit 5 of 'A'..'Z' only: both differences are negative just for those
+            word[n + j] = (byte) (b | ((('@' - b) & (b - '[')) >>> 31 << 5));
+        }
+        return to - from > copy ? MAX_WORD + 1 : n + copy;
+    }
+
+    private static int trimStart(byte[] word, int length) {
+        int from = 0;
+        int to = Math.min(length, MAX_WORD);
+        while (from < to && PUNCT[word[from] & 0xFF]) from++;
+        return from;
+    }
+
+    /** A word cut at MAX_WORD keeps its end: the punctuation that ends it is not in the buffer. */
+    private static int trimEnd(byte[] word, int length, int from) {
+        int to = Math.min(length, MAX_WORD);
+        if (length <= MAX_WORD) {
+            while (to > from && PUNCT[word[to - 1] & 0xFF]) to--;
+        }
+        return to;
+    }
+
+    private void count(byte[] word, int length) {
+        int from = trimStart(word, length);
+        int to = trimEnd(word, length, from);
+        if (from == to) return;
+        long hash = WordTable.hash(word, from, to - from);
+        counted++;
+        if (sketch == null) {
+            if (table.add(word, from, to - from, hash, 1) >= 0) return;
+            becomeApproximate();
+        }
+        offer(word, from, to - from, hash, sketch.add(hash, 1));
+    }
+
+    private void becomeApproximate() {
+        // the vocabulary outgrew maxEntries words, so N does too: a sketch of that width bounds the
+        // error by about 2N/maxEntries in the memory the exact table took
+        sketch = new CountMinSketch(SKETCH_DEPTH, Integer.highestOneBit(maxEntries));
+        WordTable all = table;
+        for (int e = 0; e < all.size(); e++) sketch.add(all.hash(e), all.count(e));
+        table = new WordTable(candidateLimit(k), offHeap, MAX_WORD);
+        heap = new int[candidateLimit(k)];
+        heapIndex = new int[candidateLimit(k)];
+        byte[] key = new byte[MAX_WORD + 8];
+        for (int e = 0; e < all.size(); e++) {
+            offer(key, 0, all.copyKey(e, key), all.hash(e), sketch.estimate(all.hash(e)));
+        }
+    }
+
+    // ------------------- Candidates -------------------
+    /** Keeps {@code word} as a candidate with the given estimate if it beats the lowest one. */
+    private void offer(byte[] word, int off, int len, long hash, long estimate) {
+        int e = table.find(word, off, len, hash);
+        if (e >= 0) {
+            table.setCount(e, estimate);
+            siftDown(heapIndex[e]);
+        } else if (table.size() < heap.length) {
+            e = table.add(word, off, len, hash, estimate);
+            heap[e] = e;
+            heapIndex[e] = e;
+            siftUp(e);
+        } else if (estimate > table.count(heap[0])) {
+            table.replace(heap[0], word, off, len, hash, estimate);
+            siftDown(0);
+        }
+    }
+
+    /** Re-reads every candidate's estimate from the sketch, after a merge raised them, and restores the heap. */
+    private void refreshCandidates() {
+        for (int e = 0; e < table.size(); e++) table.setCount(e, sketch.estimate(table.hash(e)));
+        for (int i = table.size() / 2 - 1; i >= 0; i--) siftDown(i);
+    }
+
+    private void siftUp(int i) {
+        int e = heap[i];
+        long count = table.count(e);
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (table.count(heap[parent]) <= count) break;
+            place(heap[parent], i);
+            i = parent;
+        }
+        place(e, i);
+    }
+
+    private void siftDown(int i) {
+        int size = table.size();
+        int e = heap[i];
+        long count = table.count(e);
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) break;
+            if (child + 1 < size && table.count(heap[child + 1]) < table.count(heap[child])) child++;
+            if (table.count(heap[child]) >= count) break;
+            place(heap[child], i);
+            i = child;
+        }
+        place(e, i);
+    }
+
+    private void place(int entry, int i) {
+        heap[i] = entry;
+        heapIndex[entry] = i;
+    }
+
+    // ------------------- Segments -------------------
+    @Override
+    public StatisticsCollector newSegment() {
+        return new WordFrequencies(k, maxEntries, offHeap);
+    }
+
+    @Override
+    public void merge(StatisticsCollector other) {
+        WordFrequencies next = (WordFrequencies) other;
+        if (!next.any) return;
+        if (!any) {
+            takeOver(next);
+            return;
+        }
+        if (!next.sawSpace) {
+            tailLength = append(tail, tailLength, next.tail, next.tailLength);
+            return;
+        }
+        System.arraycopy(tail, 0, scratch, 0, Math.min(tailLength, MAX_WORD));
+        int joined = append(scratch, tailLength, next.head, next.headLength);
+        if (!sawSpace) {
+            sawSpace = true;
+            System.arraycopy(scratch, 0, head, 0, Math.min(joined, MAX_WORD));
+            headLength = joined;
+        } else if (joined > 0) {
+            count(scratch, joined);
+        }
+        mergeTable(next);
+        System.arraycopy(next.tail, 0, tail, 0, Math.min(next.tailLength, MAX_WORD));
+        tailLength = next.tailLength;
+    }
+
+    /** Appends one capped-length word to another in {@code to}; returns the new capped length. */
+    private static int append(byte[] to, int length, byte[] from, int fromLength) {
+        if (length > MAX_WORD || (length == MAX_WORD && fromLength > 0)) return MAX_WORD + 1;
+        int n = Math.min(fromLength, MAX_WORD - length);
+        System.arraycopy(from, 0, to, length, n);
+        return fromLength > n ? MAX_WORD + 1 : length + n;
+    }
+
+    private void mergeTable(WordFrequencies next) {
+        counted += next.counted;
+        WordTable words = next.table;
+        byte[] key = new byte[MAX_WORD + 8];
+        int e = 0;
+        if (sketch == null && next.sketch == null) {
+            for (; e < words.size(); e++) {
+                if (table.add(key, 0, words.copyKey(e, key), words.hash(e), words.count(e)) < 0) break;
+            }
+            if (e == words.size()) return;
+        }
+        // words [0, e) are in our table already and go into the sketch with it
+        if (sketch == null) becomeApproximate();
+        if (next.sketch != null) {
+            sketch.merge(next.sketch);
+        } else {
+            for (int r = e; r < words.size(); r++) sketch.add(words.hash(r), words.count(r));
+        }
+        refreshCandidates();
+        for (int r = 0; r < words.size(); r++) {
+            offer(key, 0, words.copyKey(r, key), words.hash(r), sketch.estimate(words.hash(r)));
+        }
+    }
+
+    private void takeOver(WordFrequencies next) {
+        table = next.table;
+        sketch = next.sketch;
+        heap = next.heap;
+        heapIndex = next.heapIndex;
+        counted = next.counted;
+        any = true;
+        sawSpace = next.sawSpace;
+        System.arraycopy(next.head, 0, head, 0, MAX_WORD);
+        headLength = next.headLength;
+        System.arraycopy(next.tail, 0, tail, 0, MAX_WORD);
+        tailLength = next.tailLength;
+        next.reset();
+    }
+
+    @Override
+    public void reset() {
+        table = new WordTable(maxEntries, offHeap);
+        sketch = null;
+        heap = null;
+        heapIndex = null;
+        counted = 0;
+        any = false;
+        sawSpace = false;
+        headLength = 0;
+        tailLength = 0;
+    }
+
+    // ------------------- Result -------------------
+    private static final class Ranked {
+        final byte[] word;
+        final long count;
+
+        Ranked(byte[] word, long count) {
+            this.word = word;
+            this.count = count;
+        }
+    }
+
+    /** Highest count first, then byte order, so the ranking does not depend on how the input was split. */
+    private static final Comparator<Ranked> RANK = (a, b) -> a.count != b.count
+            ? Long.compare(b.count, a.count) : Arrays.compareUnsigned(a.word, b.word);
+
+    @Override
+    public Map<String, Object> summary() {
+        // the held-back first and last words only count once the input is complete
+        List<byte[]> pending = new ArrayList<>(2);
+        if (sawSpace) addPending(pending, head, headLength);
+        addPending(pending, tail, tailLength);
+        int pendingCount = pending.size();
+
+        // one more than k: in approximate mode the best word left out decides which estimates stand out
+        PriorityQueue<Ranked> top = new PriorityQueue<>(k + 2, RANK.reversed());
+        long distinct = table.size();
+        for (int e = 0; e < table.size(); e++) {
+            byte[] word = table.key(e);
+            long count = sketch == null ? table.count(e) : sketch.estimate(table.hash(e));
+            for (int p = 0; p < pending.size(); p++) {
+                if (Arrays.equals(pending.get(p), word)) {
+                    count++;
+                    pending.set(p, null);
+                }
+            }
+            rank(top, new Ranked(word, count));
+        }
+        for (int p = 0; p < pending.size(); p++) {
+            byte[] word = pending.get(p);
+            if (word == null) continue;
+            long count = sketch == null ? 0 : sketch.estimate(WordTable.hash(word, 0, word.length));
+            for (int q = p; q < pending.size(); q++) {
+                if (Arrays.equals(pending.get(q), word)) {
+                    count++;
+                    pending.set(q, null);
+                }
+            }
+            distinct++;
+            rank(top, new Ranked(word, count));
+        }
+
+        List<Ranked> ranked = new ArrayList<>(top);
+        ranked.sort(RANK);
+        long bound = 0;
+        long outside = 0;
+        if (sketch != null) {
+            bound = (2 * (counted + pendingCount) + sketch.width() - 1) / sketch.width();
+            outside = ranked.size() > k ? ranked.get(k).count : 0;
+        }
+        Map<String, Object> words = new LinkedHashMap<>();
+        for (int i = 0; i < Math.min(k, ranked.size()); i++) {
+            Ranked r = ranked.get(i);
+            if (sketch != null && r.count - bound <= outside) break;
+            words.merge(new String(r.word, encoding.charset()), r.count, (a, b) -> (Long) a + (Long) b);
+        }
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("approximate", sketch != null);
+        if (sketch == null) summary.put("distinct", distinct);
+        else summary.put("errorBound", bound);
+        summary.put("top", words);
+        return summary;
+    }
+
+    private static void addPending(List<byte[]> pending, byte[] word, int length) {
+        int from = trimStart(word, length);
+        int to = trimEnd(word, length, from);
+        if (from < to) pending.add(Arrays.copyOfRange(word, from, to));
+    }
+
+    private void rank(PriorityQueue<Ranked> top, Ranked r) {
+        top.add(r);
+        if (top.size() > k + 1) top.poll();
+    }
+}
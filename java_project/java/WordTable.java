@@ -0,0 +1,218 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash table from short byte strings to counts, for
+ * {@link WordFrequencies}. Entries live in primitive arrays and the key bytes in
+ * one arena buffer, which can be direct so that a large vocabulary stays off
+ * the Java heap; nothing is allocated per word.
+ *
+ * Keys are hashed and compared eight bytes at a time, so a typical word costs
+ * one or two loads rather than a loop per byte. The table refuses new keys
+ * once it holds {@code maxEntries}; the caller decides what to do then.
+ *
+ * A table built with a {@code keyCapacity} gives every entry that many key
+ * bytes, so that {@link #replace} can put another key in an entry in place.
+ */
+final class WordTable {
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final int maxEntries;
+    private final boolean direct;
+    private final int keyCapacity;  // 0: keys packed one after another
+
+    private int[] slots;          // entry index + 1, 0 = empty
+    private long[] hashes;
+    private long[] counts;
+    private int[] offsets;
+    private byte[] lengths;
+    private ByteBuffer arena;
+    private int size;
+
+    WordTable(int maxEntries, boolean direct) {
+        this(maxEntries, direct, 0);
+    }
+
+    /** Every entry keeps {@code keyCapacity} key bytes, so keys of up to that length can be replaced. */
+    WordTable(int maxEntries, boolean direct, int keyCapacity) {
+        this.maxEntries = maxEntries;
+        this.direct = direct;
+        this.keyCapacity = keyCapacity;
+        int initial = Math.min(1024, Integer.highestOneBit(Math.max(16, maxEntries)));
+        slots = new int[initial * 2];
+        hashes = new long[initial];
+        counts = new long[initial];
+        offsets = new int[initial];
+        lengths = new byte[initial];
+        arena = allocate(initial * 16);
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        return buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /** 64-bit hash of {@code key[off, off + len)}; the table uses the low half, the sketch both. */
+    static long hash(byte[] key, int off, int len) {
+        long h = len;
+        int i = 0;
+        for (; len - i > 8; i += 8) h = mix(h ^ (long) LONGS.get(key, off + i));
+        h = mix(h ^ bytes(key, off + i, len - i));
+        return h ^ (h >>> 32);
+    }
+
+    private static long mix(long h) {
+        h *= 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    /** The {@code n <= 8} bytes at {@code key[at]} as a little-endian long. */
+    private static long bytes(byte[] key, int at, int n) {
+        if (at + 8 <= key.length) return (long) LONGS.get(key, at) & mask(n);
+        long v = 0;
+        for (int i = n - 1; i >= 0; i--) v = (v << 8) | (key[at + i] & 0xFF);
+        return v;
+    }
+
+    private static long mask(int n) {
+        return n >= 8 ? -1L : (1L << (8 * n)) - 1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long count(int entry) {
+        return counts[entry];
+    }
+
+    void setCount(int entry, long count) {
+        counts[entry] = count;
+    }
+
+    long hash(int entry) {
+        return hashes[entry];
+    }
+
+    byte[] key(int entry) {
+        byte[] key = new byte[lengths[entry]];
+        copyKey(entry, key);
+        return key;
+    }
+
+    /** Copies the key of {@code entry} to the start of {@code into} and returns its length. */
+    int copyKey(int entry, byte[] into) {
+        arena.get(offsets[entry], into, 0, lengths[entry]);
+        return lengths[entry];
+    }
+
+    /** The entry holding {@code key}, or -1. */
+    int find(byte[] key, int off, int len, long hash) {
+        int mask = slots.length - 1;
+        for (int s = (int) hash & mask; ; s = (s + 1) & mask) {
+            int e = slots[s] - 1;
+            if (e < 0) return -1;
+            if (hashes[e] == hash && equal(e, key, off, len)) return e;
+        }
+    }
+
+    /**
+     * Adds {@code delta} to the count of {@code key}, inserting it if needed.
+     * Returns the entry, or -1 if the key is new and the table is full.
+     */
+    int add(byte[] key, int off, int len, long hash, long delta) {
+        int mask = slots.length - 1;
+        int s = (int) hash & mask;
+        for (; ; s = (s + 1) & mask) {
+            int e = slots[s] - 1;
+            if (e < 0) break;
+            if (hashes[e] == hash && equal(e, key, off, len)) {
+                counts[e] += delta;
+                return e;
+            }
+        }
+        if (size >= maxEntries) return -1;
+        if (size == hashes.length) {
+            grow();
+            return add(key, off, len, hash, delta);
+        }
+        int used = keyCapacity > 0 ? size * keyCapacity : size == 0 ? 0 : offsets[size - 1] + lengths[size - 1];
+        int end = used + Math.max(len, keyCapacity) + 8; // equal() reads whole longs past the last key
+        if (end > arena.capacity()) {
+            ByteBuffer bigger = allocate(Math.max(arena.capacity() * 2, end));
+            arena.limit(used).position(0);
+            bigger.put(arena);
+            arena.clear();
+            arena = bigger;
+        }
+        arena.put(used, key, off, len);
+        int e = size++;
+        hashes[e] = hash;
+        counts[e] = delta;
+        offsets[e] = used;
+        lengths[e] = (byte) len;
+        slots[s] = e + 1;
+        return e;
+    }
+
+    /**
+     * Puts {@code key}, which must not be in the table, in place of the key of
+     * {@code entry} with the given count.
+     */
+    void replace(int entry, byte[] key, int off, int len, long hash, long count) {
+        if (len > keyCapacity) throw new IllegalArgumentException("key longer than " + keyCapacity + " bytes: " + len);
+        unlink(entry);
+        arena.put(offsets[entry], key, off, len);
+        hashes[entry] = hash;
+        counts[entry] = count;
+        lengths[entry] = (byte) len;
+        int mask = slots.length - 1;
+        int s = (int) hash & mask;
+        while (slots[s] != 0) s = (s + 1) & mask;
+        slots[s] = entry + 1;
+    }
+
+    /** Frees the slot of {@code entry}, moving later slots of its probe run back so that no lookup stops early. */
+    private void unlink(int entry) {
+        int mask = slots.length - 1;
+        int hole = (int) hashes[entry] & mask;
+        while (slots[hole] != entry + 1) hole = (hole + 1) & mask;
+        for (int s = (hole + 1) & mask; slots[s] != 0; s = (s + 1) & mask) {
+            int home = (int) hashes[slots[s] - 1] & mask;
+            if (((s - home) & mask) >= ((s - hole) & mask)) { // the hole is on the way from its home to s
+                slots[hole] = slots[s];
+                hole = s;
+            }
+        }
+        slots[hole] = 0;
+    }
+
+    private boolean equal(int e, byte[] key, int off, int len) {
+        if (lengths[e] != len) return false;
+        int base = offsets[e];
+        int i = 0;
+        for (; len - i > 8; i += 8) {
+            if (arena.getLong(base + i) != (long) LONGS.get(key, off + i)) return false;
+        }
+        return (arena.getLong(base + i) & mask(len - i)) == bytes(key, off + i, len - i);
+    }
+
+    private void grow() {
+        int capacity = hashes.length * 2;
+        hashes = Arrays.copyOf(hashes, capacity);
+        counts = Arrays.copyOf(counts, capacity);
+        offsets = Arrays.copyOf(offsets, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        slots = new int[capacity * 2];
+        int mask = slots.length - 1;
+        for (int e = 0; e < size; e++) {
+            int s = (int) hashes[e] & mask;
+            while (slots[s] != 0) s = (s + 1) & mask;
+            slots[s] = e + 1;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Saving deletes only the line indexes of entries the saving instance dropped,
+ * not those another instance sharing the directory wrote meanwhile.
+ */
+class AnalysisCacheTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void saveKeepsLineIndexesItDidNotDrop() throws IOException {
+        Path index = dir.resolve("cache").resolve("cache.bin");
+        Path a = file("a.txt", 73);
+        Path b = file("b.txt", 79);
+        AnalysisCache first = new AnalysisCache(index, 100, AnalysisCache.DEFAULT_MAX_AGE_MILLIS, false);
+        AnalysisCache second = new AnalysisCache(index, 100, AnalysisCache.DEFAULT_MAX_AGE_MILLIS, false);
+        analyze(first, a);
+        analyze(second, b);
+
+        second.save(); // knows nothing of a
+        assertNotNull(first.lineIndex(a));
+        first.clear();
+        first.save();
+        assertNull(first.lineIndex(a));
+        assertNotNull(second.lineIndex(b));
+    }
+
+    private Path file(String name, long seed) throws IOException {
+        return Files.write(dir.resolve(name), TestInputs.random(new Random(seed), 5_000, false));
+    }
+
+    private static void analyze(AnalysisCache cache, Path file) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        LineIndex lines = new LineIndex();
+        cache.analyze(file, new FileAnalysisEngine(), FileAnalysisEngine.Mode.SEQUENTIAL, AnalysisMonitor.NONE,
+                Collections.singletonList(lines));
+        cache.putLineIndex(file, attrs, lines);
+        assertNotNull(cache.lineIndex(file));
+    }
+}
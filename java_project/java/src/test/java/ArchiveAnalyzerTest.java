@@ -0,0 +1,106 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Zip entries are counted by their content, a gzipped one decompressed and a
+ * misnamed one as it is, and a directory pass answers unchanged archives from
+ * the cache.
+ */
+class ArchiveAnalyzerTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void countsEntriesByTheirContent() throws IOException {
+        byte[] plain = TestInputs.random(new Random(59), 10_000, false);
+        byte[] zipped = TestInputs.random(new Random(61), 20_000, true);
+        byte[] misnamed = TestInputs.utf8("not gzip at all\n");
+        Path zip = zip("mixed.zip", plain, zipped, misnamed);
+
+        ArchiveResult archive = new ArchiveAnalyzer(new FileAnalysisEngine()).analyze(zip, ArchiveAnalyzer.Format.ZIP);
+        assertEquals(3, archive.entries().size());
+        assertEquals(count(plain), archive.entries().get(0).result());
+        assertEquals(count(zipped), archive.entries().get(1).result());
+        assertEquals(count(misnamed), archive.entries().get(2).result());
+    }
+
+    @Test
+    void unchangedArchivesComeFromTheCache() throws IOException {
+        Path zip = zip("cached.zip", TestInputs.random(new Random(67), 5_000, false),
+                TestInputs.random(new Random(71), 5_000, false), TestInputs.utf8("x\n"));
+        AnalysisCache cache = new AnalysisCache(dir.resolve("cache").resolve("cache.bin"), 100,
+                AnalysisCache.DEFAULT_MAX_AGE_MILLIS, false);
+        assertNull(cache.get(zip));
+        DirectoryAnalyzer analyzer = new DirectoryAnalyzer(new FileAnalysisEngine(), 2, cache);
+        List<Path> roots = Collections.singletonList(zip);
+        List<AnalysisResult> archives = new ArrayList<>();
+        List<AnalysisResult> files = new ArrayList<>();
+        DirectoryAnalyzer.Listener listener = new DirectoryAnalyzer.Listener() {
+            @Override
+            public void fileAnalyzed(Path file, AnalysisResult result) {
+                files.add(result);
+            }
+
+            @Override
+            public void archiveAnalyzed(Path file, ArchiveResult archive) {
+                archives.add(archive.total());
+            }
+        };
+        AnalysisResult first = analyzer.analyze(roots, listener, AnalysisMonitor.NONE).total();
+        long hits = cache.hits();
+        AnalysisResult second = analyzer.analyze(roots, listener, AnalysisMonitor.NONE).total();
+        assertEquals(hits + 1, cache.hits());
+        assertEquals(first, second);
+        assertEquals(1, archives.size());
+        assertEquals(archives, files); // the hit is reported by its total
+
+        cache.save();
+        AnalysisCache reloaded = new AnalysisCache(dir.resolve("cache").resolve("cache.bin"), 100,
+                AnalysisCache.DEFAULT_MAX_AGE_MILLIS, false);
+        assertEquals(first, reloaded.get(zip)); // uncompressed bytes, not the archive's size
+    }
+
+    /** A zip of {@code plain} as a.txt, {@code gzipped} as b.txt.gz and {@code misnamed} as c.gz. */
+    private Path zip(String name, byte[] plain, byte[] gzipped, byte[] misnamed) throws IOException {
+        ByteArrayOutputStream gz = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(gz)) {
+            out.write(gzipped);
+        }
+        Path zip = dir.resolve(name);
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+            put(out, "a.txt", plain);
+            put(out, "b.txt.gz", gz.toByteArray());
+            put(out, "c.gz", misnamed);
+        }
+        return zip;
+    }
+
+    private static void put(ZipOutputStream out, String name, byte[] data) throws IOException {
+        out.putNextEntry(new ZipEntry(name));
+        out.write(data);
+        out.closeEntry();
+    }
+
+    private static AnalysisResult count(byte[] data) throws IOException {
+        return new FileAnalysisEngine().analyze(new ByteArrayInputStream(data), AnalysisMonitor.NONE,
+                Collections.emptyList());
+    }
+}
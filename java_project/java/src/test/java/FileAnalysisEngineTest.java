@@ -0,0 +1,84 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The parallel pass gives the sequential result, statistics included, when
+ * the file is cut into segments as small as one byte, so that every word,
+ * CRLF pair, UTF-8 sequence and byte order mark is split somewhere.
+ */
+class FileAnalysisEngineTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void everySegmentSizeGivesTheSequentialResult() throws IOException {
+        for (byte[] data : TestInputs.SEAMS) {
+            for (int segment = 1; segment <= data.length; segment++) assertSameAsSequential(data, segment);
+        }
+    }
+
+    @Test
+    void tinySegmentsGiveTheSequentialResult() throws IOException {
+        Random random = new Random(31);
+        for (int n = 0; n < 150; n++) {
+            byte[] data = TestInputs.random(random, random.nextInt(n < 100 ? 200 : 50_000), n % 4 == 0);
+            assertSameAsSequential(data, 1 + random.nextInt(n < 100 ? 8 : 4096));
+        }
+    }
+
+    @Test
+    void streamGivesTheFileResult() throws IOException {
+        byte[] data = TestInputs.random(new Random(37), 300_000, true);
+        FileAnalysisEngine engine = new FileAnalysisEngine();
+        AnalysisResult fromFile = engine.analyze(write(data), FileAnalysisEngine.Mode.SEQUENTIAL);
+        AnalysisResult fromStream = engine.analyze(new ByteArrayInputStream(data), AnalysisMonitor.NONE,
+                new ArrayList<>());
+        assertEquals(fromFile, fromStream);
+    }
+
+    private void assertSameAsSequential(byte[] data, int segment) throws IOException {
+        Path file = write(data);
+        List<StatisticsCollector> sequential = collectors();
+        List<StatisticsCollector> parallel = collectors();
+        // small buffers split the sequential pass too, along other lines than the segments
+        AnalysisResult expected = new FileAnalysisEngine(7).analyze(file, FileAnalysisEngine.Mode.SEQUENTIAL,
+                AnalysisMonitor.NONE, sequential);
+        AnalysisResult actual = new FileAnalysisEngine(64, 0, segment, ForkJoinPool.commonPool())
+                .analyze(file, FileAnalysisEngine.Mode.PARALLEL, AnalysisMonitor.NONE, parallel);
+        String message = data.length + " bytes in segments of " + segment;
+        assertEquals(expected, actual, message);
+        for (int i = 0; i < sequential.size(); i++) {
+            if (sequential.get(i) instanceof LineIndex) {
+                // which lines are checkpoints depends on the segments; that they are line starts does not
+                LineIndexTest.assertLineStarts(data, (LineIndex) parallel.get(i), message);
+                continue;
+            }
+            assertEquals(sequential.get(i).summary(), parallel.get(i).summary(),
+                    message + ": " + sequential.get(i).name());
+        }
+    }
+
+    private static List<StatisticsCollector> collectors() {
+        List<StatisticsCollector> collectors = StatisticsCollector.standard();
+        collectors.add(new LineIndex(2));
+        return collectors;
+    }
+
+    private Path write(byte[] data) throws IOException {
+        Path file = dir.resolve("input.txt");
+        Files.write(file, data);
+        return file;
+    }
+}
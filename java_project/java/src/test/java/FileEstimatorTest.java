@@ -0,0 +1,50 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** The margins of an estimate hold the exact counts at least as often as they claim to. */
+class FileEstimatorTest {
+
+    private static final int RUNS = 200;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void marginsCoverRegularInput() throws IOException {
+        // base64: every line is one 76-byte word, so blocks differ by at most one line
+        byte[] bytes = new byte[1_500_000];
+        new Random(47).nextBytes(bytes);
+        assertCoverage(Base64.getMimeEncoder(76, new byte[] {'\n'}).encode(bytes));
+    }
+
+    @Test
+    void marginsCoverIrregularInput() throws IOException {
+        assertCoverage(TestInputs.random(new Random(53), 2_000_000, false));
+    }
+
+    private void assertCoverage(byte[] data) throws IOException {
+        Path file = dir.resolve("input.txt");
+        Files.write(file, data);
+        AnalysisResult exact = new FileAnalysisEngine().analyze(file, FileAnalysisEngine.Mode.SEQUENTIAL);
+        int words = 0;
+        int lines = 0;
+        for (int seed = 0; seed < RUNS; seed++) {
+            AnalysisEstimate estimate = new FileEstimator(new FileAnalysisEngine(), 16, 4096, new Random(seed))
+                    .estimate(file);
+            assertTrue(!estimate.exact(), "counted exactly");
+            if (Math.abs(estimate.result().words() - exact.words()) <= estimate.wordsMargin()) words++;
+            if (Math.abs(estimate.result().lines() - exact.lines()) <= estimate.linesMargin()) lines++;
+        }
+        // a little below 95%: 200 runs of a true 95% interval fall under 92% about one time in 30
+        assertTrue(words >= 0.92 * RUNS, "words covered in " + words + " of " + RUNS);
+        assertTrue(lines >= 0.92 * RUNS, "lines covered in " + lines + " of " + RUNS);
+    }
+}
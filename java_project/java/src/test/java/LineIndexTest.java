@@ -0,0 +1,119 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Every checkpoint of a {@link LineIndex} is a real line start and none is
+ * more than a stride after the one before, whether the index was built in one
+ * pass or merged from segments split anywhere, a CRLF pair included.
+ */
+class LineIndexTest {
+
+    @Test
+    void checkpointsAreLineStarts() {
+        Random random = new Random(23);
+        for (int n = 0; n < 300; n++) {
+            byte[] data = n < TestInputs.SEAMS.size()
+                    ? TestInputs.SEAMS.get(n) : TestInputs.random(random, random.nextInt(200), n % 3 == 0);
+            int from = Math.min(encodingOf(data).bomLength(), data.length);
+            for (int split = from; split <= data.length; split++) {
+                assertLineStarts(data, index(data, split, 1), "case " + n + ", split at " + split);
+            }
+        }
+    }
+
+    @Test
+    void segmentsShorterThanTheStrideStillLeaveCheckpoints() {
+        byte[] data = TestInputs.utf8("a\nb\nc\nd\ne\nf\ng\nh\n");
+        LineIndex index = new LineIndex(4);
+        TextCounter whole = new TextCounter(CountingKernel.active(), TextEncoding.UTF_8, true,
+                Collections.singletonList(index));
+        for (int i = 0; i < data.length; i += 4) {
+            LineIndex segment = (LineIndex) index.newSegment();
+            TextCounter counter = new TextCounter(CountingKernel.active(), TextEncoding.UTF_8, i == 0,
+                    Collections.singletonList(segment));
+            counter.update(data, i, 4);
+            whole.merge(counter);
+        }
+        assertTrue(index.checkpoints() >= 2, index.checkpoints() + " checkpoints");
+        assertLineStarts(data, index, "two lines per segment");
+    }
+
+    @Test
+    void staysBoundedOnLongInput() {
+        int lines = 2 * LineIndex.MAX_CHECKPOINTS + 10;
+        byte[] data = new byte[3 * lines];
+        for (int i = 0; i < data.length; i++) data[i] = (byte) (i % 3 == 2 ? '\n' : 'x');
+        LineIndex index = index(data, data.length / 2 + 1, 1);
+        assertTrue(index.checkpoints() <= LineIndex.MAX_CHECKPOINTS, index.checkpoints() + " checkpoints");
+        assertTrue(index.stride() > 1, "stride " + index.stride());
+        assertEquals(lines, index.lineCount());
+        assertLineStarts(data, index, "decimated");
+    }
+
+    @Test
+    void findsTheCheckpointBeforeALine() {
+        byte[] data = TestInputs.concat(TestInputs.BOM, TestInputs.utf8("a\nb\r\nc\rd\n"));
+        LineIndex index = index(data, data.length, 2);
+        assertEquals(-1, index.floor(0));
+        assertEquals(0, index.floor(1)); // the first line start is always a checkpoint
+        assertEquals(1, index.floor(2));
+        assertEquals(2, index.lineAt(index.floor(3)));
+        assertEquals(3, index.offsetAt(-1)); // after the byte order mark
+        assertEquals(5, index.offsetAt(index.floor(1)));
+        assertEquals(8, index.offsetAt(index.floor(2)));
+    }
+
+    @Test
+    void survivesARoundTrip() throws IOException {
+        byte[] data = TestInputs.random(new Random(29), 5000, true);
+        LineIndex index = index(data, 1234, 4);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        index.write(new DataOutputStream(bytes));
+        LineIndex read = LineIndex.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(index.summary(), read.summary());
+        assertEquals(index.charset(), read.charset());
+        assertLineStarts(data, read, "read back");
+    }
+
+    /** A line index with {@code stride} of two segments, {@code [0, split)} and the rest, merged. */
+    private static LineIndex index(byte[] data, int split, int stride) {
+        TextEncoding encoding = encodingOf(data);
+        LineIndex index = new LineIndex(stride);
+        TextCounter left = new TextCounter(CountingKernel.active(), encoding, true, Collections.singletonList(index));
+        left.update(data, 0, split);
+        TextCounter right = new TextCounter(CountingKernel.active(), encoding, false,
+                Collections.singletonList(index.newSegment()));
+        right.update(data, split, data.length - split);
+        left.merge(right);
+        return index;
+    }
+
+    static void assertLineStarts(byte[] data, LineIndex index, String message) {
+        List<Long> starts = TestInputs.lineStarts(data, (int) index.offsetAt(-1));
+        assertEquals(starts.size(), index.lineCount(), message);
+        for (int c = 0; c < index.checkpoints(); c++) {
+            long line = index.lineAt(c);
+            long offset = index.offsetAt(c);
+            if (line == starts.size() && offset == data.length) continue; // after a final line break
+            assertTrue(line < starts.size(), message + ": checkpoint " + c + " past the last line");
+            assertEquals(starts.get((int) line), offset, message + ": checkpoint " + c);
+            if (c > 0) assertTrue(index.lineAt(c - 1) < line, message + ": checkpoints out of order");
+            assertTrue(line - index.lineAt(c - 1) <= index.stride(), message + ": gap before checkpoint " + c);
+        }
+    }
+
+    private static TextEncoding encodingOf(byte[] data) {
+        return TextEncoding.detect(data, data.length, true);
+    }
+}
@@ -0,0 +1,51 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/** Line lengths merged at every split point match one pass, however the line breaks fall. */
+class LineLengthsTest {
+
+    @Test
+    void measuresLinesInCodePoints() {
+        byte[] data = TestInputs.utf8("ab\r\ncdé\rf\n\n😀😀😀😀 x");
+        Map<String, Object> summary = lengths(data, data.length).summary();
+        assertEquals(5L, summary.get("lines"));
+        assertEquals(6L, summary.get("longest"));
+        assertEquals(5L, summary.get("longestLine"));
+    }
+
+    @Test
+    void mergeAtEverySplitMatchesOnePass() {
+        Random random = new Random(19);
+        for (int n = 0; n < 300; n++) {
+            byte[] data = n < TestInputs.SEAMS.size()
+                    ? TestInputs.SEAMS.get(n) : TestInputs.random(random, random.nextInt(150), n % 3 == 0);
+            Map<String, Object> whole = lengths(data, data.length).summary();
+            int from = Math.min(encodingOf(data).bomLength(), data.length);
+            for (int split = from; split <= data.length; split++) {
+                assertEquals(whole, lengths(data, split).summary(), "case " + n + ", split at " + split);
+            }
+        }
+    }
+
+    /** Line lengths of {@code data} counted as two segments, {@code [0, split)} and the rest, merged. */
+    private static LineLengths lengths(byte[] data, int split) {
+        TextEncoding encoding = encodingOf(data);
+        LineLengths lines = new LineLengths();
+        TextCounter left = new TextCounter(CountingKernel.active(), encoding, true, Collections.singletonList(lines));
+        left.update(data, 0, split);
+        TextCounter right = new TextCounter(CountingKernel.active(), encoding, false,
+                Collections.singletonList(lines.newSegment()));
+        right.update(data, split, data.length - split);
+        left.merge(right);
+        return lines;
+    }
+
+    private static TextEncoding encodingOf(byte[] data) {
+        return TextEncoding.detect(data, data.length, true);
+    }
+}
@@ -0,0 +1,83 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** Inputs for the differential tests: words, every kind of line break, multi-byte and broken UTF-8. */
+final class TestInputs {
+
+    static final byte[] BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    private static final byte[][] TOKENS = {
+        utf8(" "), utf8("\t"), utf8("\n"), utf8("\r"), utf8("\r\n"), utf8("word"), utf8("The,"), utf8("é"),
+        utf8("€"), utf8("😀"),
+        {(byte) 0x80},                                          // lone continuation byte
+        {(byte) 0xFF},                                          // never valid
+        {(byte) 0xE2, (byte) 0x82},                             // truncated sequence
+        {(byte) 0xC0, (byte) 0x80},                             // overlong
+        {(byte) 0xED, (byte) 0xA0, (byte) 0x80},                // surrogate
+        {(byte) 0xF4, (byte) 0x90, (byte) 0x80, (byte) 0x80},   // above U+10FFFF
+    };
+
+    /** Short inputs where a split lands on every interesting boundary. */
+    static final List<byte[]> SEAMS = List.of(
+            utf8(""),
+            utf8("a\r\nb"),
+            utf8("\r\n\r\n\r\r\n\n"),
+            utf8("one two\r\nthree\rfour\n"),
+            utf8("  héllo wörld \r\n€uro 😀\r"),
+            concat(BOM, utf8("first line\r\nsecond")),
+            concat(BOM, utf8("\r\n")),
+            BOM,
+            new byte[] {'a', (byte) 0xE2, (byte) 0x82, '\r', '\n', (byte) 0xF0, (byte) 0x9F, (byte) 0x98, (byte) 0x80},
+            new byte[] {(byte) 0x80, (byte) 0x80, 'x', (byte) 0xC3, '\n', (byte) 0xC3, (byte) 0xA9, (byte) 0xED,
+                    (byte) 0xA0, (byte) 0x80, (byte) 0xF4, (byte) 0x90, (byte) 0x80, (byte) 0x80, (byte) 0xE2});
+
+    private TestInputs() {}
+
+    static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static byte[] concat(byte[] a, byte[] b) {
+        byte[] c = new byte[a.length + b.length];
+        System.arraycopy(a, 0, c, 0, a.length);
+        System.arraycopy(b, 0, c, a.length, b.length);
+        return c;
+    }
+
+    /** About {@code length} bytes of random tokens, optionally after a byte order mark. */
+    static byte[] random(Random random, int length, boolean bom) {
+        List<byte[]> tokens = new ArrayList<>();
+        int n = 0;
+        // some inputs are mostly line breaks, so checkpoints and seams meet often
+        int alphabet = random.nextInt(4) == 0 ? 5 : TOKENS.length;
+        while (n < length) {
+            byte[] token = TOKENS[random.nextInt(alphabet)];
+            tokens.add(token);
+            n += token.length;
+        }
+        byte[] data = new byte[(bom ? BOM.length : 0) + n];
+        int i = 0;
+        if (bom) {
+            System.arraycopy(BOM, 0, data, 0, BOM.length);
+            i = BOM.length;
+        }
+        for (byte[] token : tokens) {
+            System.arraycopy(token, 0, data, i, token.length);
+            i += token.length;
+        }
+        return data;
+    }
+
+    /** Offsets at which lines start, found the slow way; a break at the very end starts no line. */
+    static List<Long> lineStarts(byte[] data, int from) {
+        List<Long> starts = new ArrayList<>();
+        if (from < data.length) starts.add((long) from);
+        for (int i = from; i < data.length; i++) {
+            if (data[i] == '\r' && i + 1 < data.length && data[i + 1] == '\n') i++;
+            if ((data[i] == '\n' || data[i] == '\r') && i + 1 < data.length) starts.add((long) i + 1);
+        }
+        return starts;
+    }
+}
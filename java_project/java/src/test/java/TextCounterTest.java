@@ -0,0 +1,77 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * {@link TextCounter#merge} at every split point gives the one-pass result,
+ * whatever straddles the seam: a word, a CRLF pair, a UTF-8 sequence, broken
+ * or not. Every kernel that loads on this JVM is checked.
+ */
+class TextCounterTest {
+
+    @Test
+    void countsKnownText() {
+        byte[] data = TestInputs.concat(TestInputs.BOM, TestInputs.utf8("héllo wörld\r\nfoo\rbar 😀\n"));
+        AnalysisResult r = count(CountingKernel.Scalar.INSTANCE, encodingOf(data), data, data.length);
+        assertEquals(5, r.words());
+        assertEquals(3, r.lines());
+        assertEquals(19, r.codePoints()); // line breaks are not characters
+        assertEquals(20, r.chars());      // the emoji is two UTF-16 units
+        assertEquals(data.length, r.bytes());
+        assertEquals(0, r.malformed());
+    }
+
+    @Test
+    void mergeAtEverySplitMatchesOnePass() {
+        for (CountingKernel kernel : CountingKernel.available()) {
+            for (byte[] data : TestInputs.SEAMS) assertEverySplit(kernel, data);
+        }
+    }
+
+    @Test
+    void mergeOfRandomInputMatchesOnePass() {
+        Random random = new Random(7);
+        for (int n = 0; n < 200; n++) {
+            byte[] data = TestInputs.random(random, random.nextInt(300), n % 3 == 0);
+            for (CountingKernel kernel : CountingKernel.available()) assertEverySplit(kernel, data);
+        }
+    }
+
+    @Test
+    void malformedUtf8IsCountedNotFatal() {
+        byte[] data = {'a', (byte) 0xFF, ' ', (byte) 0xE2, (byte) 0x82, '\n', (byte) 0xC0, (byte) 0x80};
+        AnalysisResult r = count(CountingKernel.Scalar.INSTANCE, TextEncoding.UTF_8, data, data.length);
+        assertEquals(3, r.words());
+        assertEquals(2, r.lines());
+        assertEquals(4, r.malformed()); // FF, the cut E2 82, and C0 80 as two
+    }
+
+    private static void assertEverySplit(CountingKernel kernel, byte[] data) {
+        TextEncoding encoding = encodingOf(data);
+        AnalysisResult whole = count(kernel, encoding, data, data.length);
+        // a later segment never starts inside the byte order mark
+        for (int split = Math.min(encoding.bomLength(), data.length); split <= data.length; split++) {
+            assertEquals(whole, count(kernel, encoding, data, split),
+                    kernel.name() + ", split at " + split + " of " + data.length);
+        }
+    }
+
+    /** Counts {@code data} as two segments, {@code [0, split)} and the rest, merged. */
+    private static AnalysisResult count(CountingKernel kernel, TextEncoding encoding, byte[] data, int split) {
+        List<StatisticsCollector> none = Collections.emptyList();
+        TextCounter left = new TextCounter(kernel, encoding, true, none);
+        left.update(data, 0, split);
+        TextCounter right = new TextCounter(kernel, encoding, false, none);
+        right.update(data, split, data.length - split);
+        left.merge(right);
+        return left.result();
+    }
+
+    private static TextEncoding encodingOf(byte[] data) {
+        return TextEncoding.detect(data, data.length, true);
+    }
+}
@@ -0,0 +1,78 @@
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Malformed sequences are counted like the JDK decoder replaces them (one per
+ * maximal invalid subpart), and validators over adjacent ranges merge to the
+ * count of one validator over the whole input.
+ */
+class Utf8ValidatorTest {
+
+    @Test
+    void countsLikeTheJdkDecoder() throws CharacterCodingException {
+        for (byte[] data : TestInputs.SEAMS) assertEquals(replacements(data), malformed(data, data.length));
+        Random random = new Random(11);
+        for (int n = 0; n < 300; n++) {
+            byte[] data = TestInputs.random(random, random.nextInt(200), false);
+            assertEquals(replacements(data), malformed(data, data.length), "case " + n);
+        }
+    }
+
+    @Test
+    void mergeAtEverySplitMatchesOnePass() {
+        Random random = new Random(13);
+        for (int n = 0; n < 300; n++) {
+            byte[] data = n < TestInputs.SEAMS.size()
+                    ? TestInputs.SEAMS.get(n) : TestInputs.random(random, random.nextInt(120), false);
+            long whole = malformed(data, data.length);
+            for (int split = 0; split <= data.length; split++) {
+                assertEquals(whole, malformed(data, split), "case " + n + ", split at " + split);
+            }
+        }
+    }
+
+    @Test
+    void blockCheckAgreesWithTheByteWalk() {
+        Random random = new Random(17);
+        for (CountingKernel kernel : CountingKernel.available()) {
+            for (int n = 0; n < 100; n++) {
+                byte[] data = TestInputs.random(random, random.nextInt(20_000), false);
+                Utf8Validator fast = new Utf8Validator();
+                fast.update(data, 0, data.length, kernel);
+                assertEquals(malformed(data, data.length), fast.malformed(true), kernel.name() + " case " + n);
+            }
+        }
+    }
+
+    /** Malformed sequences found by two validators over {@code [0, split)} and the rest, merged. */
+    private static long malformed(byte[] data, int split) {
+        Utf8Validator left = new Utf8Validator();
+        left.update(data, 0, split);
+        Utf8Validator right = new Utf8Validator();
+        right.update(data, split, data.length - split);
+        left.merge(right);
+        return left.malformed(true);
+    }
+
+    private static long replacements(byte[] data) throws CharacterCodingException {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                .replaceWith("�");
+        CharBuffer chars = decoder.decode(ByteBuffer.wrap(data));
+        long count = 0;
+        for (int i = 0; i < chars.length(); i++) {
+            if (chars.charAt(i) == '�') count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,89 @@
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Top words are exact while the vocabulary fits and merge at every split point
+ * like one pass; past that only words that stand out by more than the error
+ * bound are reported, with estimates within the bound.
+ */
+class WordFrequenciesTest {
+
+    @Test
+    void countsExactlyWhileTheVocabularyFits() {
+        byte[] data = TestInputs.utf8("The the, THE cat. \"cat\" dog");
+        Map<String, Object> summary = words(new WordFrequencies(2), data, data.length).summary();
+        assertEquals(false, summary.get("approximate"));
+        assertEquals(3L, summary.get("distinct"));
+        assertEquals(Map.of("the", 3L, "cat", 2L), summary.get("top"));
+    }
+
+    @Test
+    void mergeAtEverySplitMatchesOnePass() {
+        Random random = new Random(41);
+        for (int n = 0; n < 300; n++) {
+            byte[] data = n < TestInputs.SEAMS.size()
+                    ? TestInputs.SEAMS.get(n) : TestInputs.random(random, random.nextInt(150), n % 3 == 0);
+            Map<String, Object> whole = words(new WordFrequencies(5), data, data.length).summary();
+            int from = Math.min(encodingOf(data).bomLength(), data.length);
+            for (int split = from; split <= data.length; split++) {
+                assertEquals(whole, words(new WordFrequencies(5), data, split).summary(),
+                        "case " + n + ", split at " + split);
+            }
+        }
+    }
+
+    @Test
+    void approximateTopWordsStandOutOfTheNoise() {
+        // 20 frequent words, w0 most, among 200,000 words seen once
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            for (int c = 0; c < 1000 * (20 - i); c++) tokens.add("w" + i);
+        }
+        for (int i = 0; i < 200_000; i++) tokens.add("once" + i);
+        Collections.shuffle(tokens, new Random(43));
+        byte[] data = String.join(" ", tokens).getBytes(StandardCharsets.US_ASCII);
+
+        for (int split : new int[] {data.length, data.length / 3}) {
+            Map<String, Object> summary = words(new WordFrequencies(5, 1024, false), data, split).summary();
+            assertEquals(true, summary.get("approximate"));
+            long bound = (Long) summary.get("errorBound");
+            @SuppressWarnings("unchecked")
+            Map<String, Object> top = (Map<String, Object>) summary.get("top");
+            assertFalse(top.isEmpty(), "nothing stands out: " + summary);
+            assertTrue(top.containsKey("w0"), summary.toString());
+            for (Map.Entry<String, Object> e : top.entrySet()) {
+                assertTrue(e.getKey().startsWith("w"), "noise reported: " + summary);
+                long exact = 1000L * (20 - Integer.parseInt(e.getKey().substring(1)));
+                long estimate = (Long) e.getValue();
+                assertTrue(estimate >= exact && estimate <= exact + bound, e + " of " + exact + " ± " + bound);
+            }
+        }
+    }
+
+    /** {@code collector} fed {@code data} as two segments, {@code [0, split)} and the rest, merged. */
+    private static WordFrequencies words(WordFrequencies collector, byte[] data, int split) {
+        TextEncoding encoding = encodingOf(data);
+        TextCounter left = new TextCounter(CountingKernel.active(), encoding, true,
+                Collections.singletonList(collector));
+        left.update(data, 0, split);
+        TextCounter right = new TextCounter(CountingKernel.active(), encoding, false,
+                Collections.singletonList(collector.newSegment()));
+        right.update(data, split, data.length - split);
+        left.merge(right);
+        return collector;
+    }
+
+    private static TextEncoding encodingOf(byte[] data) {
+        return TextEncoding.detect(data, data.length, true);
+    }
+}